@@ -0,0 +1,47 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+package jtermemu;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads the recorded shell output in src/main/resources/captures.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class Captures {
+
+	public static byte[] load( String name ) {
+		try ( InputStream in = Captures.class.getResourceAsStream( "/captures/" + name + ".bin" ) ) {
+			if ( in == null ) {
+				throw new IllegalArgumentException( "No such capture: " + name );
+			}
+			return in.readAllBytes();
+		}
+		catch ( IOException e ) {
+			throw new IllegalStateException( "Cannot read capture " + name, e );
+		}
+	}
+
+}
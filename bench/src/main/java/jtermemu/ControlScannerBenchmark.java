@@ -0,0 +1,94 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+package jtermemu;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Splits 64 KB of a capture into printable ASCII runs with the scalar and
+ * the Vector API scanner. One operation is one byte, so the results are
+ * in MB/s.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ControlScannerBenchmark {
+
+	@Param( { "cat", "lscolor", "utf8" } )
+	public String workload;
+
+	private static final int SIZE = 64 * 1024;
+
+	private byte[] data;
+
+	@Setup
+	public void setup() {
+		byte[] capture = Captures.load( workload );
+		data = new byte [SIZE];
+		for ( int i=0; i < SIZE; i += capture.length ) {
+			System.arraycopy( capture, 0, data, i, Math.min( capture.length, SIZE - i ) );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( SIZE )
+	public int scalar() {
+		int i = 0, runs = 0;
+		while ( i < data.length ) {
+			i = ControlScanner.scanScalar( data, i, data.length ) + 1;
+			++runs;
+		}
+		return runs;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( SIZE )
+	@Fork( value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector" )
+	public int vector() {
+		int i = 0, runs = 0;
+		while ( i < data.length ) {
+			i = ControlScanner.scan( data, i, data.length ) + 1;
+			++runs;
+		}
+		return runs;
+	}
+
+}
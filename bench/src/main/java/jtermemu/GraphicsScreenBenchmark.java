@@ -0,0 +1,152 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+package jtermemu;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures one GraphicsScreen frame update for
+ *
+ * 	idle  - a full screen of colored text that does not change
+ * 	dirty - every cell is rewritten before each frame
+ * 	blink - a full screen of blinking text that does not change
+ * 	rgb   - like dirty, but every row in a different 24-bit color
+ * 	type  - one character is typed before each frame
+ *
+ * rendered into the 16 color indexed image (render=indexed) or the
+ * TYPE_INT_RGB image (render=rgb).
+ *
+ * Results are in microseconds per frame; run with "-prof gc" for the bytes
+ * allocated per frame. At the end of each trial, the tile cache statistics
+ * are printed; its size can be set with -jvmArgsAppend -Djtermemu.tiles=n.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( value = 1, jvmArgsAppend = "-Djava.awt.headless=true" )
+public class GraphicsScreenBenchmark {
+
+	@Param( { "idle", "dirty", "blink", "rgb", "type" } )
+	public String screen;
+
+	@Param( { "indexed", "rgb" } )
+	public String render;
+
+	private GraphicsScreen 	gfxScr;
+	private TextScreen 		textScr;
+	private Dimension 		size;
+	private long 			frame = 0;
+	private byte[][] 		pages;
+	private int 			page;
+	private byte[] 			key = new byte [1];
+	private PrintStream 	stdout;
+
+	/**
+	 * Builds a screen full of text: every row in a different color, with
+	 * the given SGR attribute switched on.
+	 */
+	private static byte[] page( int seed, int attr, boolean rgb ) {
+		StringBuilder sb = new StringBuilder( "\u001b[H" );
+		for ( int y=0; y < 25; ++y ) {
+			sb.append( "\u001b[" ).append( attr ).append( ';' );
+			if ( rgb ) {
+				int n = ( y + seed ) * 10;
+				sb.append( "38;2;" ).append( n ).append( ';' ).append( 255 - n ).append( ';' ).append( 128 + n / 2 );
+				sb.append( ";48;2;" ).append( n / 4 ).append( ';' ).append( 0 ).append( ';' ).append( 64 - n / 4 );
+			}
+			else {
+				sb.append( 30 + ( y + seed ) % 8 );
+			}
+			sb.append( 'm' );
+			for ( int x=0; x < ( y < 24 ? 80 : 79 ); ++x ) {
+				sb.append( (char)( 0x21 + ( x + y + seed ) % 94 ) );
+			}
+		}
+		sb.append( "\u001b[0m" );
+		return sb.toString().getBytes();
+	}
+
+	@Setup
+	public void setup() {
+		stdout  = System.out;
+		System.setOut( new PrintStream( OutputStream.nullOutputStream() ) );
+		gfxScr 	= new GraphicsScreen( null, render.equals( "rgb" ) );
+		textScr = gfxScr.getTextScreen();
+		size 	= gfxScr.getMinimumSize();
+		int attr = screen.equals( "blink" ) ? 5 : 0;
+		boolean rgb = screen.equals( "rgb" );
+		pages = new byte [2][];
+		pages[0] = page( 0, attr, rgb );
+		pages[1] = page( 1, attr, rgb );
+		textScr.write( pages[0], 0, pages[0].length );
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.setOut( stdout );
+		TileCache tiles = gfxScr.getTileCache();
+		System.out.printf( "%n%s/%s: tile cache %d of %d tiles, %.2f%% hits, %d evictions%n", 
+				render, screen, tiles.size(), tiles.capacity(), 100.0 * tiles.getHitRate(), tiles.getEvictions() );
+	}
+
+	@Setup( Level.Invocation )
+	public void touch() {
+		if ( screen.equals( "dirty" ) || screen.equals( "rgb" ) ) {
+			page ^= 1;
+			textScr.write( pages[page], 0, pages[page].length );
+		}
+		else if ( screen.equals( "type" ) ) {
+			key[0] = (byte)( 0x21 + ( page++ % 94 ) );
+			textScr.write( key, 0, 1 );
+		}
+	}
+
+	@Benchmark
+	public Rectangle updateImage() {
+		// a 60 Hz clock, so that the blink phases change every 15 or 30 frames
+		return gfxScr.update( size, ++frame * 1000 / 60 );
+	}
+
+}
@@ -0,0 +1,109 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+package jtermemu;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs a complete RegexSearch over a scrollback history of about one
+ * million build log lines, with a ForkJoinPool of the given parallelism
+ * (0 = one thread per processor).
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Xmx2g", 
+		"-Djtermemu.scrollback.lines=1000000", "-Djtermemu.scrollback.bytes=1000000000" } )
+public class RegexSearchBenchmark {
+
+	private static final int LINES = 1000000;
+
+	@Param( { "warning: .*_len", "ERROR .* timeout", "Tests run: [0-9]+, Failures: [1-9]" } )
+	public String regex;
+
+	@Param( { "0", "1" } )
+	public int parallelism;
+
+	private ForkJoinPool 	pool;
+	private RegexSearch 	search;
+	private Pattern 		pattern;
+
+	@Setup
+	public void setup() {
+		byte[] data = Captures.load( "buildlog" );
+		PrintStream stdout = System.out;
+		System.setOut( new PrintStream( OutputStream.nullOutputStream() ) );
+		TextScreen textScr = new TextScreen( null );
+		while ( textScr.getScrollback().size() < LINES - 2000 ) {
+			textScr.write( data, 0, data.length );
+		}
+		System.setOut( stdout );
+		pool 	= parallelism > 0 ? new ForkJoinPool( parallelism ) : new ForkJoinPool();
+		search 	= new RegexSearch( textScr, pool );
+		pattern = Pattern.compile( regex );
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public int search() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch( 1 );
+		int[] matches = { 0 };
+		search.start( pattern, new SearchListener() {
+			public void found( long[] lines, int count ) {
+				matches[0] += count;
+			}
+			public void finished() {
+				latch.countDown();
+			}
+		} );
+		latch.await();
+		return matches[0];
+	}
+
+}
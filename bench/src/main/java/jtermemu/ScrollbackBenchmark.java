@@ -0,0 +1,130 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+package jtermemu;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Archives and reads back the lines a capture leaves in the scrollback
+ * history.
+ *
+ * The capture is first replayed through a TextScreen; the lines it pushes
+ * into the history are then archived over and over into a Scrollback with
+ * the default budget. One operation is one line, so the average time mode
+ * reports ns/line. At the end of each trial, the encoded size per archived
+ * line is printed next to the size of an uncompressed line.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( value = 1, jvmArgsAppend = "-Djava.awt.headless=true" )
+public class ScrollbackBenchmark {
+
+	private static final int LINES = 4096;
+
+	@Param( { "buildlog", "cat", "lscolor" } )
+	public String workload;
+
+	private int 		width;
+	private int[] 		rowChars;
+	private char[] 		rowStyles;
+	private int 		nrows;
+	private int 		pos;
+	private int[] 		lineChars;
+	private char[] 		lineStyles;
+	private Scrollback 	scrollback;
+
+	@Setup
+	public void setup() {
+		byte[] data = Captures.load( workload );
+		PrintStream stdout = System.out;
+		System.setOut( new PrintStream( OutputStream.nullOutputStream() ) );
+		TextScreen textScr = new TextScreen( null );
+		textScr.write( data, 0, data.length );
+		System.setOut( stdout );
+		Scrollback history = textScr.getScrollback();
+		width = textScr.getColumns();
+		nrows = history.size();
+		rowChars  = new int [ nrows * width ];
+		rowStyles = new char [ nrows * width ];
+		for ( int i=0; i < nrows; ++i ) {
+			history.getLine( nrows - 1 - i, rowChars, rowStyles, i * width );
+		}
+		lineChars  = new int [ width ];
+		lineStyles = new char [ width ];
+		scrollback = new Scrollback( textScr.getStyleTable(), width, Scrollback.DEFAULT_MAX_LINES, Scrollback.DEFAULT_MAX_BYTES );
+		pos 	   = 0;
+		// fill the history so reads cover both tiers
+		for ( int i=0; i < Scrollback.DEFAULT_MAX_LINES; i += LINES ) {
+			archive();
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.out.printf( "%n%s: %d lines, %.1f bytes per archived line (%d uncompressed), %.1f%% off-heap%n", 
+				workload, scrollback.size(), (double) scrollback.getEncodedBytes() / scrollback.size(), width * 6,
+				100.0 * scrollback.getOffHeapBytes() / scrollback.getEncodedBytes() );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( LINES )
+	public Scrollback archive() {
+		for ( int i=0; i < LINES; ++i ) {
+			scrollback.push( rowChars, rowStyles, pos * width );
+			if ( ++pos == nrows ) pos = 0;
+		}
+		return scrollback;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( LINES )
+	public int[] read() {
+		int n = scrollback.size();
+		for ( int i=0; i < LINES; ++i ) {
+			scrollback.getLine( ( pos + i * 31 ) % n, lineChars, lineStyles, 0 );
+		}
+		return lineChars;
+	}
+
+}
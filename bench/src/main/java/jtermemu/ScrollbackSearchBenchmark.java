@@ -0,0 +1,89 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+package jtermemu;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Searches a scrollback history of one million build log lines, the way
+ * an incremental search does while the query is typed: the query grows
+ * one character at a time, and only the matches nearest to the bottom
+ * (RESULTS of them) are needed.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Xmx2g" } )
+public class ScrollbackSearchBenchmark {
+
+	private static final int LINES 	 = 1000000;
+	private static final int RESULTS = 1000;
+
+	@Param( { "w", "wa", "war", "warn", "warning", "warning: unused", "Tests run: 7,", "xyzzy" } )
+	public String query;
+
+	private Scrollback scrollback;
+
+	@Setup
+	public void setup() {
+		byte[] data = Captures.load( "buildlog" );
+		PrintStream stdout = System.out;
+		System.setOut( new PrintStream( OutputStream.nullOutputStream() ) );
+		TextScreen textScr = new TextScreen( null );
+		textScr.write( data, 0, data.length );
+		System.setOut( stdout );
+		Scrollback history = textScr.getScrollback();
+		int width = textScr.getColumns();
+		int[] chars  = new int [ width ];
+		char[] styles = new char [ width ];
+		scrollback = new Scrollback( textScr.getStyleTable(), width, LINES, Long.MAX_VALUE );
+		for ( int i=0; i < LINES; ++i ) {
+			history.getLine( i % history.size(), chars, styles, 0 );
+			scrollback.push( chars, styles, 0 );
+		}
+	}
+
+	@Benchmark
+	public long[] search() {
+		return scrollback.search( query, true, RESULTS );
+	}
+
+}
@@ -0,0 +1,111 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+package jtermemu;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replays recorded shell output through TextScreen.write in the 1 KB
+ * pieces InputThread reads, cycling through the capture.
+ *
+ * One operation is one byte, so the default throughput mode reports MB/s
+ * (bytes per microsecond); run with "-bm avgt -tu ns" for ns/byte and with
+ * "-prof gc" for bytes allocated per byte written.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( value = 1, jvmArgsAppend = "-Djava.awt.headless=true" )
+public class TextScreenBenchmark {
+
+	private static final int CHUNK 	   = 64 * 1024;
+	private static final int READ_SIZE = 1024;
+
+	@Param( { "cat", "lscolor", "vim", "htop", "scroll", "utf8" } )
+	public String workload;
+
+	private byte[] 		data;
+	private int 		pos;
+	private TextScreen 	textScr;
+	private PrintStream stdout;
+
+	@Setup
+	public void setup() {
+		data 	= Captures.load( workload );
+		pos  	= 0;
+		textScr = new TextScreen( null );
+		// keep "unsupported sequence" diagnostics out of the results
+		stdout 	= System.out;
+		System.setOut( new PrintStream( OutputStream.nullOutputStream() ) );
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.setOut( stdout );
+	}
+
+	private void replay() {
+		int n = CHUNK;
+		while ( n > 0 ) {
+			int len = Math.min( n, Math.min( READ_SIZE, data.length - pos ) );
+			textScr.write( data, pos, len );
+			pos += len;
+			n   -= len;
+			if ( pos == data.length ) pos = 0;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( CHUNK )
+	public void write() {
+		replay();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( CHUNK )
+	@Fork( value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector" } )
+	public void writeVectorScan() {
+		replay();
+	}
+
+}
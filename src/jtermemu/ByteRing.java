@@ -0,0 +1,161 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+package jtermemu;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free single-producer / single-consumer byte ring buffer.
+ *
+ * The producer publishes bytes by advancing the volatile tail after copying
+ * them in, the consumer releases space by advancing the volatile head after
+ * copying them out. A producer that finds the ring full parks until the
+ * consumer has made room. The consumer is woken through the thread given to
+ * the constructor whenever it has announced with prepareWait() that it is
+ * about to park.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class ByteRing {
+
+	private byte[] 				buffer;
+	private int 				mask;
+	private volatile long 		head = 0;	// next byte to read; written by the consumer only
+	private volatile long 		tail = 0;	// next byte to write; written by the producer only
+	private Thread 				consumer;
+	private volatile Thread 	waitingProducer = null;
+	private volatile boolean 	consumerWaiting = false;
+
+	// statistics
+	private volatile long 		pendingSince = 0;	// nanoTime when the ring last became non-empty
+	private volatile long 		producerStalls = 0;
+	private volatile long 		maxQueueNanos = 0;
+
+	/**
+	 * Creates a ring; capacity is rounded up to a power of two.
+	 */
+	public ByteRing( int capacity, Thread consumer_ ) {
+		int size = Integer.highestOneBit( Math.max( capacity - 1, 1 ) ) << 1;
+		buffer 	 = new byte [size];
+		mask 	 = size - 1;
+		consumer = consumer_;
+	}
+
+	/**
+	 * Copies src[offs..offs+len) into the ring, parking while it is full.
+	 * Must only be called by the producer thread.
+	 */
+	public void write( byte[] src, int offs, int len ) {
+		while ( len > 0 ) {
+			long t 	  = tail;
+			int space = buffer.length - (int)( t - head );
+			if ( space == 0 ) {
+				++producerStalls;
+				waitingProducer = Thread.currentThread();
+				if ( buffer.length - (int)( t - head ) == 0 ) {
+					LockSupport.park( this );
+				}
+				waitingProducer = null;
+				continue;
+			}
+			int n 	= Math.min( len, space );
+			int pos = (int) t & mask;
+			int n1 	= Math.min( n, buffer.length - pos );
+			System.arraycopy( src, offs, buffer, pos, n1 );
+			System.arraycopy( src, offs + n1, buffer, 0, n - n1 );
+			if ( t == head ) {
+				pendingSince = System.nanoTime();
+			}
+			tail = t + n;
+			offs += n;
+			len  -= n;
+			if ( consumerWaiting ) {
+				consumerWaiting = false;
+				LockSupport.unpark( consumer );
+			}
+		}
+	}
+
+	/**
+	 * Moves up to max bytes from the ring to dst[offs..] and returns the
+	 * number of bytes moved. Never blocks. Must only be called by the
+	 * consumer thread.
+	 */
+	public int read( byte[] dst, int offs, int max ) {
+		long h = head;
+		int n  = (int) Math.min( tail - h, max );
+		if ( n == 0 ) return 0;
+		long queued = System.nanoTime() - pendingSince;
+		if ( queued > maxQueueNanos ) maxQueueNanos = queued;
+		int pos = (int) h & mask;
+		int n1 	= Math.min( n, buffer.length - pos );
+		System.arraycopy( buffer, pos, dst, offs, n1 );
+		System.arraycopy( buffer, 0, dst, offs + n1, n - n1 );
+		head = h + n;
+		if ( head != tail ) {
+			pendingSince = System.nanoTime();
+		}
+		Thread producer = waitingProducer;
+		if ( producer != null ) {
+			LockSupport.unpark( producer );
+		}
+		return n;
+	}
+
+	public boolean isEmpty() {
+		return head == tail;
+	}
+
+	/**
+	 * Announces that the consumer is about to park. The consumer must check
+	 * isEmpty() again afterwards, before actually parking.
+	 */
+	public void prepareWait() {
+		consumerWaiting = true;
+	}
+
+	public void cancelWait() {
+		consumerWaiting = false;
+	}
+
+	public int size() {
+		return (int)( tail - head );
+	}
+
+	public int capacity() {
+		return buffer.length;
+	}
+
+	public long getProducerStalls() {
+		return producerStalls;
+	}
+
+	/**
+	 * Returns the longest time bytes have waited in the ring before the
+	 * consumer picked them up, in nanoseconds.
+	 */
+	public long getMaxQueueNanos() {
+		return maxQueueNanos;
+	}
+
+}
@@ -0,0 +1,59 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe
+*/
+
+package jtermemu;
+
+/**
+ * Finds the end of a run of printable ASCII characters (0x20..0x7e) in
+ * shell output, i.e. the next C0 control, ESC, DEL or byte with the high bit
+ * set. The latter covers raw C1 controls as well as UTF-8 sequences, which
+ * both need to go through the decoder and parser.
+ *
+ * If the jdk.incubator.vector module has been added to the boot layer
+ * (--add-modules jdk.incubator.vector), VectorControlScanner is used to
+ * test a whole vector of bytes per step; otherwise a scalar loop is used.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class ControlScanner {
+
+	public static final boolean VECTORIZED =
+			ModuleLayer.boot().findModule( "jdk.incubator.vector" ).isPresent();
+
+	/**
+	 * Returns the index of the first byte in arr[from..to) that is not
+	 * printable ASCII, or to if there is none.
+	 */
+	public static int scan( byte[] arr, int from, int to ) {
+		if ( VECTORIZED ) {
+			return VectorControlScanner.scan( arr, from, to );
+		}
+		return scanScalar( arr, from, to );
+	}
+
+	public static int scanScalar( byte[] arr, int from, int to ) {
+		// bytes >= 0x80 are negative and therefore caught by the first test
+		while ( from < to && arr[from] >= 0x20 && arr[from] != 0x7f ) ++from;
+		return from;
+	}
+
+}
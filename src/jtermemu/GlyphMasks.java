@@ -0,0 +1,162 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+
+package jtermemu;
+
+/**
+ * Pixel masks of character cells, prepared once from FontData.
+ * 
+ * Each row of a cell is a CELL_WIDTH bit mask, the leftmost pixel in the
+ * highest bit. Every glyph is expanded up front in each of its four
+ * weights (regular, thin, bold, thin bold); the decorations are kept as
+ * row masks as well. Drawing a cell then only combines masks and expands
+ * them to pixels. See GraphicsScreen for the cell layout.
+ * 
+ * Glyph numbers are font characters minus FontData.LOW_CHAR, plus
+ * UNDEF_GLYPH for characters the font does not have.
+ * 
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class GlyphMasks {
+
+	public static final int CELL_WIDTH 	= 11;
+	public static final int CELL_HEIGHT = 15;
+	public static final int UNDEF_GLYPH = FontData.HIGH_CHAR - FontData.LOW_CHAR + 1;
+	public static final int GLYPHS 		= UNDEF_GLYPH + 1;
+
+	public static final int GLYPH_TOP 	= 2;	// first of the 8 glyph rows
+	public static final int GLYPH_WIDTH = 10;	// glyph pixels, including the smear; the last column stays empty
+	public static final int DECORATIONS = Attributes.ATTRF_OVERLINE | Attributes.ATTRF_UNDERLINE | 
+			Attributes.ATTRF_DOUBLE_UNDERLINE | Attributes.ATTRF_STRIKE_DIAGONAL_BLTR | 
+			Attributes.ATTRF_STRIKE_DIAGONAL_TLBR | Attributes.ATTRF_STRIKE_HORIZONTAL | 
+			Attributes.ATTRF_STRIKE_VERTICAL;
+
+	private static final int ALL 		= ( 1 << CELL_WIDTH ) - 1;
+
+	// glyph rows: 8 per glyph and weight, weight = thin | bold << 1
+	private static final int[] glyphRows = new int [ GLYPHS * 4 * 8 ];
+
+	private static final int[] overline 		= new int [ CELL_HEIGHT ];
+	private static final int[] underline 		= new int [ CELL_HEIGHT ];
+	private static final int[] doubleUnderline 	= new int [ CELL_HEIGHT ];
+	private static final int[] strikeTLBR 		= new int [ CELL_HEIGHT ];
+	private static final int[] strikeBLTR 		= new int [ CELL_HEIGHT ];
+	private static final int[] strikeHorizontal = new int [ CELL_HEIGHT ];
+	private static final int[] strikeVertical 	= new int [ CELL_HEIGHT ];
+
+	static {
+		for ( int g=0; g < GLYPHS; ++g ) {
+			for ( int weight=0; weight < 4; ++weight ) {
+				boolean thin = ( weight & 1 ) != 0;
+				boolean bold = ( weight & 2 ) != 0;
+				for ( int cy=0; cy < 8; ++cy ) {
+					int b = g == UNDEF_GLYPH ? FontData.undefbits[ cy ] & 255 : FontData.bits[ g * 8 + cy ] & 255;
+					// GLYPH_WIDTH pixels wide: 8 pixel glyph plus 2 pixels of smear
+					b <<= thin ? 1 : 2;
+					if ( bold ) {
+						b |= ( b >> 1 ) | ( b >> 2 );
+					}
+					else if ( !thin ) {
+						b |= b >> 1;
+					}
+					glyphRows[ ( g * 4 + weight ) * 8 + cy ] = b << ( CELL_WIDTH - GLYPH_WIDTH );
+				}
+			}
+		}
+		overline[0] 						= ALL;
+		underline[ CELL_HEIGHT-3 ] 			= ALL;
+		doubleUnderline[ CELL_HEIGHT-3 ] 	= ALL;
+		doubleUnderline[ CELL_HEIGHT-1 ] 	= ALL;
+		strikeHorizontal[ GLYPH_TOP+5 ] 	= ALL;
+		for ( int cx=0; cx < CELL_WIDTH; ++cx ) {
+			strikeTLBR[ GLYPH_TOP+cx ] 	   |= pixel( cx );
+			strikeBLTR[ GLYPH_TOP+cx ] 	   |= pixel( CELL_WIDTH-1-cx );
+			strikeVertical[ GLYPH_TOP+cx ] |= pixel( CELL_WIDTH/2 );
+		}
+	}
+
+	/**
+	 * Returns the mask bit of pixel column cx.
+	 */
+	public static int pixel( int cx ) {
+		return 1 << ( CELL_WIDTH - 1 - cx );
+	}
+
+	/**
+	 * Returns the weight of a glyph drawn with the given Attributes.
+	 */
+	public static int weight( int attr ) {
+		return ( ( attr & Attributes.ATTRF_THIN ) != 0 ? 1 : 0 ) | ( ( attr & Attributes.ATTRF_BOLD ) != 0 ? 2 : 0 );
+	}
+
+	/**
+	 * Returns row cy (0..7) of the given glyph in the given weight.
+	 */
+	public static int glyphRow( int glyph, int weight, int cy ) {
+		return glyphRows[ ( glyph * 4 + weight ) * 8 + cy ];
+	}
+
+	/**
+	 * Fills the row masks of a cell showing the given glyph with the given
+	 * Attributes: fg gets the pixels drawn in the foreground color, ul the
+	 * underline pixels and black the strike-out pixels. Where they overlap,
+	 * black is drawn over ul, and ul over fg.
+	 */
+	public static void cellMasks( int glyph, int attr, int[] fg, int[] ul, int[] black ) {
+		int g = ( glyph * 4 + weight( attr ) ) * 8;
+		for ( int cy=0; cy < CELL_HEIGHT; ++cy ) {
+			fg[cy] = ul[cy] = black[cy] = 0;
+		}
+		for ( int cy=0; cy < 8; ++cy ) {
+			fg[ GLYPH_TOP + cy ] = glyphRows[ g + cy ];
+		}
+		if ( ( attr & Attributes.ATTRF_OVERLINE ) != 0 ) {
+			add( fg, overline );
+		}
+		if ( ( attr & Attributes.ATTRF_DOUBLE_UNDERLINE ) != 0 ) {
+			add( ul, doubleUnderline );
+		}
+		else if ( ( attr & Attributes.ATTRF_UNDERLINE ) != 0 ) {
+			add( ul, underline );
+		}
+		if ( ( attr & Attributes.ATTRF_STRIKE_DIAGONAL_TLBR ) != 0 ) {
+			add( black, strikeTLBR );
+		}
+		if ( ( attr & Attributes.ATTRF_STRIKE_DIAGONAL_BLTR ) != 0 ) {
+			add( black, strikeBLTR );
+		}
+		if ( ( attr & Attributes.ATTRF_STRIKE_HORIZONTAL ) != 0 ) {
+			add( black, strikeHorizontal );
+		}
+		if ( ( attr & Attributes.ATTRF_STRIKE_VERTICAL ) != 0 ) {
+			add( black, strikeVertical );
+		}
+	}
+
+	private static void add( int[] dst, int[] mask ) {
+		for ( int cy=0; cy < CELL_HEIGHT; ++cy ) {
+			dst[cy] |= mask[cy];
+		}
+	}
+
+}
@@ -23,9 +23,13 @@ package jtermemu;
 
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
 
 import javax.swing.JFrame;
 
@@ -69,21 +73,107 @@ import javax.swing.JFrame;
  *				ddddddddddd			d = double underline
  *				-----------
  * 
+ * The frame is rendered either into a 16 color indexed image, where 256
+ * and 24-bit colors are mapped to the nearest palette entry, or, with
+ * -Djtermemu.render=rgb, into a TYPE_INT_RGB image that shows them
+ * exactly, and applies the colors programs set with OSC 4, 10 and 11.
+ * There are two such images: update() draws into the back buffer
+ * and then swaps it with the front buffer, which is what paint() shows, so
+ * frames can be drawn on another thread than the one that paints.
+ * 
  * @author Ekkehard Morgenstern
  *
  */
 public class GraphicsScreen {
-	private BufferedImage image = null;
+	private volatile BufferedImage image = null;	// front buffer: the last finished frame
+	private WritableRaster raster = null;			// back buffer: the next frame is drawn here
+	private WritableRaster[] rasters = new WritableRaster [2];
+	private BufferedImage[] rgbImages = new BufferedImage [2];
+	private int back = 1;							// index of the back buffer
+	private int[] staleFrom = null;		// columns [staleFrom, staleTo) of each row were only drawn into the front buffer
+	private int[] staleTo = null;
+	private int[] copyBuf = null;
+	private final Object paintLock = new Object();	// held while painting the front buffer and while swapping
 	private TextScreen textScr = null;
 	private Dimension minSize = null;
-	private long frameCounter = 0;
+	private long epoch = System.nanoTime();	// clock origin for the blink phases
+	private long frameMillis = 0;			// clock at the last update
 	private JFrame frame = null;
+	private int[] chars = null;
+	private char[] styles = null;
+	private int[] rowFrom = null;		// columns [rowFrom, rowTo) of each row need drawing
+	private int[] rowTo = null;
+	private boolean blinkSlow = false;
+	private boolean blinkFast = false;
+	private byte[] cellBlink = null;	// blink kind of each cell as drawn: bit 0 slow, bit 1 fast
+	private int slowCells = 0, fastCells = 0;
+	private int repaintX0, repaintY0, repaintX1, repaintY1;	// cells changed in this update
+	private Dimension paintedSize = null;	// component size at the last update
+	private TileCache tiles = new TileCache( Integer.getInteger( "jtermemu.tiles", TileCache.DEFAULT_CAPACITY ), 
+			CELL_WIDTH * CELL_HEIGHT );
+	private BufferedImage[][] phaseImages = new BufferedImage [2][4];	// indexed image, by buffer and blink phase
+	private short[] blinkEntryOf = new short [ 4 << 8 ];		// blink entry by kind << 8 | c0 << 4 | c1, or 0
+	private int[] blinkKeys = new int [ MAX_BLINK_ENTRIES ];
+	private int blinkEntries = 0;
+	private boolean blinkOverflow = false;
+	private int cursor = -1;			// cursor drawn in the image, see TextScreen.getSnapshotCursor()
+	private int[] cursorTile = new int [ CELL_WIDTH * CELL_HEIGHT ];
+	private byte[][] strips = null;		// indexed image: palette indices of each row of cells
+	private int stripWidth = 0;
+	private int[] fgRows = new int [ CELL_HEIGHT ];
+	private int[] ulRows = new int [ CELL_HEIGHT ];
+	private int[] blackRows = new int [ CELL_HEIGHT ];
+	private StyleTable styleTable = new StyleTable();
+	private int[] paletteRGB = new int [ 16 ];
+	private int[] xtermRGB = new int [ 256 ];
+	private int[] colorRGB = new int [ 16 ];		// RGB image: paletteRGB with the OSC 4/10/11 colors applied
+	private int[] oscPalette = new int [ 256 ];
+	private int[] oscDefaults = new int [ 2 ];
+	private int colorChanges = 0;			// see TextScreen.getSnapshotColorChanges()
+	private int lastRGB = -1, lastIndex = 0;
+	private boolean trueColor = false;
+	private int black = 1;		// pixel value of black in the image
 	
-	private static final int CELL_WIDTH = 11;
-	private static final int CELL_HEIGHT = 15;
+	private static final int CELL_WIDTH = GlyphMasks.CELL_WIDTH;
+	private static final int CELL_HEIGHT = GlyphMasks.CELL_HEIGHT;
+
+	// indexed image: palette entries from BLINK_BASE on are assigned to blinking colors
+	private static final int BLINK_BASE = 16;
+	private static final int MAX_BLINK_ENTRIES = 256 - BLINK_BASE;
+
+	// tile cache key: glyph number plus the attributes that change its shape
+	private static final int GLYPH_BITS  = 32 - Integer.numberOfLeadingZeros( GlyphMasks.GLYPHS - 1 );
+	private static final int GLYPH_ATTRS = Attributes.ATTRF_UNDERLINE | Attributes.ATTRF_THIN | 
+			Attributes.ATTRF_BOLD | Attributes.ATTRF_OVERLINE | Attributes.ATTRF_DOUBLE_UNDERLINE | 
+			Attributes.ATTRF_STRIKE_DIAGONAL_BLTR | Attributes.ATTRF_STRIKE_DIAGONAL_TLBR | 
+			Attributes.ATTRF_STRIKE_VERTICAL | Attributes.ATTRF_STRIKE_HORIZONTAL;
+
+	private static final byte[] paletteR = { 
+			(byte) 0xcc, (byte) 0x00, (byte) 0x88, (byte) 0x00, 
+			(byte) 0x88, (byte) 0x00, (byte) 0x88, (byte) 0x00, 
+			(byte) 0xff, (byte) 0x88, (byte) 0xff, (byte) 0x00, 
+			(byte) 0xff, (byte) 0x00, (byte) 0xff, (byte) 0x00 
+	};
+	private static final byte[] paletteG = { 
+			(byte) 0xcc, (byte) 0x00, (byte) 0x00, (byte) 0x88, 
+			(byte) 0x88, (byte) 0x00, (byte) 0x00, (byte) 0x88, 
+			(byte) 0xff, (byte) 0x88, (byte) 0x00, (byte) 0xff, 
+			(byte) 0xff, (byte) 0x00, (byte) 0x00, (byte) 0xff 
+	};
+	private static final byte[] paletteB = { 
+			(byte) 0xcc, (byte) 0x00, (byte) 0x00, (byte) 0x00, 
+			(byte) 0x00, (byte) 0x88, (byte) 0x88, (byte) 0x88, 
+			(byte) 0xff, (byte) 0x88, (byte) 0x00, (byte) 0x00, 
+			(byte) 0x00, (byte) 0xff, (byte) 0xff, (byte) 0xff 
+	};
 	
 	public GraphicsScreen( JFrame frame_ ) {
-		frame = frame_;
+		this( frame_, "rgb".equals( System.getProperty( "jtermemu.render" ) ) );
+	}
+	
+	GraphicsScreen( JFrame frame_, boolean trueColor_ ) {
+		frame 	  = frame_;
+		trueColor = trueColor_;
 		init();
 	}
 	
@@ -97,158 +187,559 @@ public class GraphicsScreen {
 		int rows = textScr.getRows();
 		int allocWidth  = cols * CELL_WIDTH;
 		int allocHeight = rows * CELL_HEIGHT;
-		image = new BufferedImage( allocWidth, allocHeight, BufferedImage.TYPE_BYTE_INDEXED,
-					new IndexColorModel( 4, 16, 
-							new byte[] { (byte) 0xcc, (byte) 0x00, (byte) 0x88, (byte) 0x00, 
-										 (byte) 0x88, (byte) 0x00, (byte) 0x88, (byte) 0x00, 
-										 (byte) 0xff, (byte) 0x88, (byte) 0xff, (byte) 0x00, 
-										 (byte) 0xff, (byte) 0x00, (byte) 0xff, (byte) 0x00 }, 
-							new byte[] { (byte) 0xcc, (byte) 0x00, (byte) 0x00, (byte) 0x88, 
-										 (byte) 0x88, (byte) 0x00, (byte) 0x00, (byte) 0x88, 
-										 (byte) 0xff, (byte) 0x88, (byte) 0x00, (byte) 0xff, 
-										 (byte) 0xff, (byte) 0x00, (byte) 0x00, (byte) 0xff },
-							new byte[] { (byte) 0xcc, (byte) 0x00, (byte) 0x00, (byte) 0x00, 
-									     (byte) 0x00, (byte) 0x88, (byte) 0x88, (byte) 0x88, 
-									     (byte) 0xff, (byte) 0x88, (byte) 0x00, (byte) 0x00, 
-									     (byte) 0x00, (byte) 0xff, (byte) 0xff, (byte) 0xff } 
-					)
-				);		
+		for ( int i=0; i < 2; ++i ) {
+			if ( trueColor ) {
+				rgbImages[i] = new BufferedImage( allocWidth, allocHeight, BufferedImage.TYPE_INT_RGB );
+				rasters[i]   = rgbImages[i].getRaster();
+			}
+			else {
+				rasters[i] = Raster.createInterleavedRaster( DataBuffer.TYPE_BYTE, allocWidth, allocHeight, 1, null );
+			}
+		}
+		raster  = rasters[back];
+		image   = frontImage();
 		minSize = new Dimension( allocWidth, allocHeight );
+		if ( !trueColor ) {
+			strips 	   = new byte [ rows ][ allocWidth * CELL_HEIGHT ];
+			stripWidth = allocWidth;
+		}
+		else {
+			copyBuf = new int [ allocWidth * CELL_HEIGHT ];
+		}
+		for ( int i=0; i < 16; ++i ) {
+			paletteRGB[i] = ( ( paletteR[i] & 255 ) << 16 ) | ( ( paletteG[i] & 255 ) << 8 ) | ( paletteB[i] & 255 );
+		}
+		System.arraycopy( paletteRGB, 0, colorRGB, 0, 16 );
+		for ( int i=0; i < 256; ++i ) {
+			xtermRGB[i] = xtermColor( i );
+		}
+		black = trueColor ? 0 : 1;
 	}
 	
-	private void updateImage() {
-		if ( image == null ) return;
-		
-		if ( ++frameCounter < 0 ) {
-			frameCounter = 0;
+	/**
+	 * Returns the 0xRRGGBB value of xterm color n as long as OSC 4 has not
+	 * changed it: the 16 base colors of the palette, a 6x6x6 color cube, 24
+	 * grays.
+	 */
+	private int xtermColor( int n ) {
+		if ( n < 16 ) {
+			return paletteRGB[ TextScreen.colorXlat( n ) ];
 		}
-		
-		int cols = textScr.getColumns();
-		int rows = textScr.getRows();
-		boolean blinkSlow = false;
-		boolean blinkFast = false;
-		if ( ( frameCounter % 60 ) >= 30 ) {
-			blinkSlow = true;
-		}
-		if ( ( frameCounter % 30 ) >= 15 ) {
-			blinkFast = true;
-		}
-		int[] charBuf = new int [ CELL_WIDTH * CELL_HEIGHT ];
-		int[] buffer  = textScr.getBuffer();
-		int[] data    = new int [ 8 ];
-		WritableRaster raster = image.getRaster();
-		for ( int y=0; y < rows; ++y ) {
-			for ( int x=0; x < cols; ++x ) {
-				int cell  = buffer[ y * cols + x ];
-				int chr   =   cell 							   & 255;
-				int bgcol = ( cell >> TextScreen.BGCOL_SHIFT ) & 15;
-				int fgcol = ( cell >> TextScreen.FGCOL_SHIFT ) & 15;
-				int attr  = ( cell >> TextScreen.ATTR_SHIFT  ) & 32767;
-				int shift = ( attr & Attributes.ATTRF_THIN ) != 0 ? 1 : 2;
-				if ( ( attr & Attributes.ATTRF_BLACKEN ) == 0 ) {
-					if ( ( attr & Attributes.ATTRF_BRIGHT ) != 0 && fgcol < 8 ) {
-						fgcol += 8;
-					}
-					if ( ( attr & Attributes.ATTRF_INVERSE ) != 0 || 
-						 ( ( attr & Attributes.ATTRF_BLINKFAST ) != 0 && blinkFast ) ||
-						 ( ( attr & Attributes.ATTRF_BLINKSLOW ) != 0 && blinkSlow ) ) {
-						int temp = bgcol; bgcol = fgcol; fgcol = temp;
-					}					
-				}
-				else {
-					bgcol = fgcol = 1;
+		if ( n < 232 ) {
+			int i = n - 16;
+			return ( cubeLevel( i / 36 ) << 16 ) | ( cubeLevel( ( i / 6 ) % 6 ) << 8 ) | cubeLevel( i % 6 );
+		}
+		int v = 8 + ( n - 232 ) * 10;
+		return ( v << 16 ) | ( v << 8 ) | v;
+	}
+	
+	private static int cubeLevel( int n ) {
+		return n == 0 ? 0 : 55 + n * 40;
+	}
+	
+	/**
+	 * RGB image: fetches the colors set by OSC 4, 10 and 11 into xtermRGB
+	 * and colorRGB. The default foreground and background are the palette
+	 * entries of black and white, so OSC 10 and 11 recolor those as well.
+	 */
+	private void applyColors() {
+		textScr.copyColors( oscPalette, oscDefaults );
+		for ( int i=0; i < 256; ++i ) {
+			xtermRGB[i] = oscPalette[i] >= 0 ? oscPalette[i] : xtermColor( i );
+		}
+		for ( int i=0; i < 16; ++i ) {
+			colorRGB[ TextScreen.colorXlat( i ) ] = xtermRGB[i];
+		}
+		if ( oscDefaults[0] >= 0 ) colorRGB[1] = oscDefaults[0];
+		if ( oscDefaults[1] >= 0 ) colorRGB[0] = oscDefaults[1];
+	}
+
+	/**
+	 * Returns the image palette entry for a style color: palette indices
+	 * are used as they are, RGB colors are mapped to the nearest entry.
+	 */
+	private int paletteIndex( int color ) {
+		if ( ( color & StyleTable.COLOR_XTERM ) != 0 ) {
+			return TextScreen.colorXlat( color & 255 );
+		}
+		if ( ( color & StyleTable.COLOR_RGB ) == 0 ) {
+			return color & 15;
+		}
+		int rgb = color & 0xffffff;
+		if ( rgb != lastRGB ) {
+			int best = Integer.MAX_VALUE;
+			for ( int i=0; i < 16; ++i ) {
+				int dr = ( ( paletteRGB[i] >> 16 ) & 255 ) - ( ( rgb >> 16 ) & 255 );
+				int dg = ( ( paletteRGB[i] >> 8 ) & 255 ) - ( ( rgb >> 8 ) & 255 );
+				int db = ( paletteRGB[i] & 255 ) - ( rgb & 255 );
+				int d  = dr * dr + dg * dg + db * db;
+				if ( d < best ) {
+					best 	  = d;
+					lastIndex = i;
 				}
-				if ( chr >= FontData.LOW_CHAR && chr <= FontData.HIGH_CHAR ) {
-					int offs = ( chr - FontData.LOW_CHAR ) * 8;
-					for ( int cy=0; cy < 8; ++cy ) {
-						int b = ( (int) FontData.bits[ offs + cy ] ) & 255;
-						data[cy] = b << shift;
-					}
+			}
+			lastRGB = rgb;
+		}
+		return lastIndex;
+	}
+	
+	/**
+	 * Returns the 0xRRGGBB value of a style color.
+	 */
+	private int rgbOf( int color ) {
+		if ( ( color & StyleTable.COLOR_RGB ) != 0 ) {
+			return color & 0xffffff;
+		}
+		if ( ( color & StyleTable.COLOR_XTERM ) != 0 ) {
+			return xtermRGB[ color & 255 ];
+		}
+		return colorRGB[ color & 15 ];
+	}
+
+	/**
+	 * Returns the pixel value for a style color in this image; bright
+	 * selects the intense variant of the 8 base colors.
+	 */
+	private int pixel( int color, boolean bright ) {
+		if ( trueColor ) {
+			if ( bright ) {
+				if ( color >= 0 && color < 8 ) {
+					color += 8;
 				}
-				else {
-					for ( int cy=0; cy < 8; ++cy ) {
-						int b = ( (int) FontData.undefbits[ cy ] ) & 255;
-						data[cy] = b << shift;
-					}					
+				else if ( ( color & ~255 ) == StyleTable.COLOR_XTERM && ( color & 255 ) < 8 ) {
+					color += 8;
 				}
-				if ( ( attr & Attributes.ATTRF_BOLD ) != 0 ) {
-					for ( int cy=0; cy < 8; ++cy ) {
-						data[cy] |= ( data[cy] >> 1 ) | ( data[cy] >> 2 );
+			}
+			return rgbOf( color );
+		}
+		int index = paletteIndex( color );
+		return bright && index < 8 ? index + 8 : index;
+	}
+	
+	/**
+	 * Returns the palette entry of the indexed image that shows color c0,
+	 * or color c1 while a blink phase selected by kind (bit 0: slow, bit 1:
+	 * fast) is on; -1 if all entries are taken.
+	 */
+	private int blinkEntry( int c0, int c1, int kind ) {
+		if ( c0 == c1 ) return c0;
+		int key = ( kind << 8 ) | ( c0 << 4 ) | c1;
+		int e = blinkEntryOf[key];
+		if ( e == 0 ) {
+			if ( blinkEntries == MAX_BLINK_ENTRIES ) return -1;
+			e = BLINK_BASE + blinkEntries;
+			blinkKeys[ blinkEntries++ ] = key;
+			blinkEntryOf[key] = (short) e;
+			for ( BufferedImage[] images : phaseImages ) {
+				Arrays.fill( images, null );
+			}
+		}
+		return e;
+	}
+
+	/**
+	 * Returns the indexed image of buffer buf for the given blink phases.
+	 * All of them share the buffer's raster; they only differ in the colors
+	 * of the blink entries of their palettes, so a blink is just a change
+	 * of image.
+	 */
+	private BufferedImage phaseImage( int buf, boolean slow, boolean fast ) {
+		int phase = ( slow ? 1 : 0 ) | ( fast ? 2 : 0 );
+		if ( phaseImages[buf][phase] == null ) {
+			int n    = BLINK_BASE + blinkEntries;
+			byte[] r = Arrays.copyOf( paletteR, n );
+			byte[] g = Arrays.copyOf( paletteG, n );
+			byte[] b = Arrays.copyOf( paletteB, n );
+			for ( int i=0; i < blinkEntries; ++i ) {
+				int key  = blinkKeys[i];
+				int kind = key >> 8;
+				boolean on = ( ( kind & 1 ) != 0 && slow ) || ( ( kind & 2 ) != 0 && fast );
+				int c = on ? key & 15 : ( key >> 4 ) & 15;
+				r[ BLINK_BASE + i ] = paletteR[c];
+				g[ BLINK_BASE + i ] = paletteG[c];
+				b[ BLINK_BASE + i ] = paletteB[c];
+			}
+			phaseImages[buf][phase] = new BufferedImage( new IndexColorModel( 8, n, r, g, b ), rasters[buf], false, null );
+		}
+		return phaseImages[buf][phase];
+	}
+
+	/**
+	 * Returns the image of the front buffer.
+	 */
+	private BufferedImage frontImage() {
+		return trueColor ? rgbImages[ back ^ 1 ] : phaseImage( back ^ 1, blinkSlow, blinkFast );
+	}
+
+	/**
+	 * Adds the cells whose blink attribute flipped phase to the cells to
+	 * draw; in the indexed image, where the palette does the blinking, only
+	 * to the cells to repaint. Returns true if there are any.
+	 */
+	private boolean damageBlinking( int cols, int rows, boolean slowFlipped, boolean fastFlipped ) {
+		int mask = ( slowFlipped && slowCells > 0 ? 1 : 0 ) | ( fastFlipped && fastCells > 0 ? 2 : 0 );
+		if ( mask == 0 ) return false;
+		for ( int y=0; y < rows; ++y ) {
+			int o = y * cols;
+			for ( int x=0; x < cols; ++x ) {
+				if ( ( cellBlink[ o + x ] & mask ) != 0 ) {
+					if ( trueColor ) {
+						damageCell( x, y );
 					}
-				}
-				else if ( ( attr & Attributes.ATTRF_THIN ) == 0 ) {
-					for ( int cy=0; cy < 8; ++cy ) {
-						data[cy] |= data[cy] >> 1;
+					else {
+						addRepaint( x, y, x + 1 );
 					}
 				}
-				for ( int n=0; n < CELL_WIDTH * CELL_HEIGHT; ++n ) {
-					charBuf[n] = bgcol;
+			}
+		}
+		return trueColor;
+	}
+
+	/**
+	 * Adds columns [x0, x1) of row y to the cells to repaint.
+	 */
+	private void addRepaint( int x0, int y, int x1 ) {
+		if ( x0 < repaintX0 ) repaintX0 = x0;
+		if ( x1 > repaintX1 ) repaintX1 = x1;
+		if ( y < repaintY0 ) repaintY0 = y;
+		if ( y >= repaintY1 ) repaintY1 = y + 1;
+	}
+
+	/**
+	 * Adds cell (x, y) to the cells to draw.
+	 */
+	private void damageCell( int x, int y ) {
+		if ( rowFrom[y] >= rowTo[y] ) {
+			rowFrom[y] = x;
+			rowTo[y]   = x + 1;
+		}
+		else {
+			if ( x < rowFrom[y] ) rowFrom[y] = x;
+			if ( x >= rowTo[y] ) rowTo[y] = x + 1;
+		}
+	}
+
+	/**
+	 * Draws glyph number glyph with the given attributes and pixel values
+	 * into the cell tile buf.
+	 */
+	private void drawTile( int[] buf, int glyph, int attr, int fgcol, int bgcol, int ulcol ) {
+		if ( ( attr & GlyphMasks.DECORATIONS ) != 0 ) {
+			drawDecoratedTile( buf, glyph, attr, fgcol, bgcol, ulcol );
+			return;
+		}
+		Arrays.fill( buf, bgcol );
+		int weight = GlyphMasks.weight( attr );
+		for ( int cy=0; cy < 8; ++cy ) {
+			int f = GlyphMasks.glyphRow( glyph, weight, cy );
+			int n = ( GlyphMasks.GLYPH_TOP + cy ) * CELL_WIDTH;
+			for ( int cx=0; cx < GlyphMasks.GLYPH_WIDTH; ++cx ) {
+				buf[ n + cx ] = ( f & GlyphMasks.pixel( cx ) ) != 0 ? fgcol : bgcol;
+			}
+		}
+	}
+
+	/**
+	 * Like drawTile(), for cells with over/underlines or strike-outs.
+	 */
+	private void drawDecoratedTile( int[] buf, int glyph, int attr, int fgcol, int bgcol, int ulcol ) {
+		GlyphMasks.cellMasks( glyph, attr, fgRows, ulRows, blackRows );
+		for ( int cy=0, n=0; cy < CELL_HEIGHT; ++cy, n += CELL_WIDTH ) {
+			int f = fgRows[cy], u = ulRows[cy], k = blackRows[cy];
+			for ( int cx=0; cx < CELL_WIDTH; ++cx ) {
+				int bit = GlyphMasks.pixel( cx );
+				buf[ n + cx ] = ( k & bit ) != 0 ? black : ( u & bit ) != 0 ? ulcol : ( f & bit ) != 0 ? fgcol : bgcol;
+			}
+		}
+	}
+
+	private void updateImage( long millis ) {
+		if ( image == null ) return;
+		
+		int cols = textScr.getColumns();
+		int rows = textScr.getRows();
+		boolean slow = ( millis / 500 & 1 ) != 0;
+		boolean fast = ( millis / 250 & 1 ) != 0;
+		boolean any;
+		frameMillis = millis;
+		repaintX0 = cols; repaintY0 = rows; repaintX1 = repaintY1 = 0;
+		if ( chars == null || chars.length != cols * rows ) {
+			chars     = new int [ cols * rows ];
+			styles    = new char [ cols * rows ];
+			cellBlink = new byte [ cols * rows ];
+			slowCells = fastCells = 0;
+			rowFrom   = new int [ rows ];
+			rowTo     = new int [ rows ];
+			staleFrom = new int [ rows ];
+			staleTo   = new int [ rows ];
+			textScr.snapshot( chars, styles, styleTable );
+			Arrays.fill( rowTo, cols );
+			any = true;
+		}
+		else {
+			any = textScr.snapshotDamaged( chars, styles, styleTable, rowFrom, rowTo );
+		}
+		int colors = textScr.getSnapshotColorChanges();
+		if ( colors != colorChanges ) {
+			colorChanges = colors;
+			if ( trueColor ) {
+				// the indexed image keeps its fixed 16 color palette
+				applyColors();
+				tiles.clear();
+				Arrays.fill( rowFrom, 0 );
+				Arrays.fill( rowTo, cols );
+				any = true;
+			}
+		}
+		if ( blinkOverflow ) {
+			// start over with the blink entries the screen uses now
+			blinkOverflow = false;
+			Arrays.fill( blinkEntryOf, (short) 0 );
+			blinkEntries = 0;
+			for ( BufferedImage[] images : phaseImages ) {
+				Arrays.fill( images, null );
+			}
+			tiles.clear();
+			Arrays.fill( rowFrom, 0 );
+			Arrays.fill( rowTo, cols );
+			any = true;
+		}
+		int cur = textScr.getSnapshotCursor();
+		if ( cur != cursor ) {
+			if ( cursor >= 0 ) damageCell( ( cursor & 0xffffff ) % cols, ( cursor & 0xffffff ) / cols );
+			if ( cur >= 0 ) damageCell( ( cur & 0xffffff ) % cols, ( cur & 0xffffff ) / cols );
+			cursor = cur;
+			any = true;
+		}
+		if ( slow != blinkSlow || fast != blinkFast ) {
+			any |= damageBlinking( cols, rows, slow != blinkSlow, fast != blinkFast );
+			blinkSlow = slow;
+			blinkFast = fast;
+		}
+		if ( any ) {
+			if ( trueColor ) {
+				copyStale( rows );
+			}
+			drawCells( cols, rows );
+			if ( !trueColor ) {
+				uploadStale( rows );
+			}
+			// what was drawn now is what the other buffer lacks
+			System.arraycopy( rowFrom, 0, staleFrom, 0, rows );
+			System.arraycopy( rowTo, 0, staleTo, 0, rows );
+			synchronized ( paintLock ) {
+				back  ^= 1;
+				raster = rasters[back];
+				image  = frontImage();
+			}
+		}
+		else if ( !trueColor ) {
+			image = frontImage();	// may be another blink phase
+		}
+	}
+
+	/**
+	 * RGB image: copies the cells the back buffer lacks from the front
+	 * buffer, unless they are drawn again anyway.
+	 */
+	private void copyStale( int rows ) {
+		WritableRaster front = rasters[ back ^ 1 ];
+		for ( int y=0; y < rows; ++y ) {
+			int x0 = staleFrom[y], x1 = staleTo[y];
+			if ( x0 >= x1 || ( rowFrom[y] <= x0 && rowTo[y] >= x1 ) ) continue;
+			int w = ( x1 - x0 ) * CELL_WIDTH;
+			front.getDataElements( x0*CELL_WIDTH, y*CELL_HEIGHT, w, CELL_HEIGHT, copyBuf );
+			raster.setDataElements( x0*CELL_WIDTH, y*CELL_HEIGHT, w, CELL_HEIGHT, copyBuf );
+		}
+	}
+
+	/**
+	 * Indexed image: uploads the rows the back buffer lacks cells of from
+	 * the strips, unless drawCells() already did.
+	 */
+	private void uploadStale( int rows ) {
+		for ( int y=0; y < rows; ++y ) {
+			if ( staleFrom[y] < staleTo[y] && rowFrom[y] >= rowTo[y] ) {
+				raster.setDataElements( 0, y*CELL_HEIGHT, stripWidth, CELL_HEIGHT, strips[y] );
+			}
+		}
+	}
+
+	/**
+	 * Draws columns [rowFrom, rowTo) of each row into the image.
+	 */
+	private void drawCells( int cols, int rows ) {
+		int curCell  = cursor >= 0 ? cursor & 0xffffff : -1;
+		int curShape = ( cursor >> 24 ) & 3;
+		boolean curBlink = ( cursor & TextScreen.CURSOR_BLINKING ) != 0;
+		for ( int y=0; y < rows; ++y ) {
+			for ( int x=rowFrom[y]; x < rowTo[y]; ++x ) {
+				int chr   = chars [ y * cols + x ];
+				int style = styles[ y * cols + x ];
+				int attr  = styleTable.getAttributes( style );
+				boolean atCursor = y * cols + x == curCell;
+				if ( atCursor && curShape == TextScreen.CURSOR_BLOCK ) {
+					attr |= curBlink ? Attributes.ATTRF_BLINKSLOW : Attributes.ATTRF_INVERSE;
 				}
-				for ( int cy=0; cy < 8; ++cy ) {
-					int b = data[cy];
-					for ( int cx=0; cx < 10; ++cx ) {
-						int b2  = 1 << ( 9 - cx );
-						int col = ( b & b2 ) != 0 ? fgcol : bgcol;
-						charBuf[ ( 2 + cy ) * CELL_WIDTH + cx ] = col;
-					}
+				int blinks = ( attr & Attributes.ATTRF_BLACKEN ) != 0 ? 0 : 
+							 ( ( attr & Attributes.ATTRF_BLINKSLOW ) != 0 || ( atCursor && curBlink ) ? 1 : 0 ) | 
+							 ( ( attr & Attributes.ATTRF_BLINKFAST ) != 0 ? 2 : 0 );
+				int was = cellBlink[ y * cols + x ];
+				if ( blinks != was ) {
+					slowCells += ( blinks & 1 ) - ( was & 1 );
+					fastCells += ( ( blinks & 2 ) - ( was & 2 ) ) >> 1;
+					cellBlink[ y * cols + x ] = (byte) blinks;
 				}
-				if ( ( attr & Attributes.ATTRF_OVERLINE ) != 0 ) {
-					for ( int cx=0; cx < CELL_WIDTH; ++cx ) {
-						charBuf[ cx ] = fgcol;
-					}					
+				int bgcol = pixel( styleTable.getBackground( style ), false );
+				int fgcol = pixel( styleTable.getForeground( style ), ( attr & ( Attributes.ATTRF_BRIGHT | Attributes.ATTRF_BLACKEN ) ) == Attributes.ATTRF_BRIGHT );
+				int curcol = fgcol, curoff = bgcol;	// underline / bar cursor: colors while shown / hidden
+				if ( ( attr & Attributes.ATTRF_INVERSE ) != 0 ) {
+					curcol = bgcol; curoff = fgcol;
 				}
-				if ( ( attr & Attributes.ATTRF_DOUBLE_UNDERLINE ) != 0 ) {
-					int offs1 = ( CELL_HEIGHT-3 ) * CELL_WIDTH;
-					int offs2 = ( CELL_HEIGHT-1 ) * CELL_WIDTH;
-					for ( int cx=0; cx < CELL_WIDTH; ++cx ) {
-						charBuf[ offs1 + cx ] = fgcol;
+				if ( ( attr & Attributes.ATTRF_BLACKEN ) == 0 ) {
+					boolean swap = ( attr & Attributes.ATTRF_INVERSE ) != 0;
+					if ( !swap && ( attr & ( Attributes.ATTRF_BLINKSLOW | Attributes.ATTRF_BLINKFAST ) ) != 0 ) {
+						swap = ( ( attr & Attributes.ATTRF_BLINKFAST ) != 0 && blinkFast ) ||
+							   ( ( attr & Attributes.ATTRF_BLINKSLOW ) != 0 && blinkSlow );
+						if ( !trueColor ) {
+							int kind = ( ( attr & Attributes.ATTRF_BLINKSLOW ) != 0 ? 1 : 0 ) | 
+									   ( ( attr & Attributes.ATTRF_BLINKFAST ) != 0 ? 2 : 0 );
+							int f = blinkEntry( fgcol, bgcol, kind );
+							int b = blinkEntry( bgcol, fgcol, kind );
+							if ( f >= 0 && b >= 0 ) {
+								fgcol = f;
+								bgcol = b;
+								swap  = false;
+							}
+							else {
+								blinkOverflow = true;	// drawn in the current phase, redrawn next frame
+							}
+						}
 					}
-					for ( int cx=0; cx < CELL_WIDTH; ++cx ) {
-						charBuf[ offs2 + cx ] = fgcol;
+					if ( swap ) {
+						int temp = bgcol; bgcol = fgcol; fgcol = temp;
 					}
 				}
-				else if ( ( attr & Attributes.ATTRF_UNDERLINE ) != 0 ) {
-					int offs1 = ( CELL_HEIGHT-3 ) * CELL_WIDTH;
-					for ( int cx=0; cx < CELL_WIDTH; ++cx ) {
-						charBuf[ offs1 + cx ] = fgcol;
-					}					
+				else {
+					bgcol = fgcol = black;
+				}
+				int ul 	  = styleTable.getUnderlineColor( style );
+				int ulcol = ul != StyleTable.NO_COLOR && ( attr & Attributes.ATTRF_BLACKEN ) == 0 ? pixel( ul, false ) : fgcol;
+				int glyph = chr >= FontData.LOW_CHAR && chr <= FontData.HIGH_CHAR ? chr - FontData.LOW_CHAR : GlyphMasks.UNDEF_GLYPH;
+				int key   = glyph | ( ( attr & GLYPH_ATTRS ) << GLYPH_BITS );
+				int ulkey = ( attr & ( Attributes.ATTRF_UNDERLINE | Attributes.ATTRF_DOUBLE_UNDERLINE ) ) != 0 ? ulcol : 0;
+				int t = tiles.find( key, fgcol, bgcol, ulkey );
+				if ( t < 0 ) {
+					t = tiles.add( key, fgcol, bgcol, ulkey );
+					drawTile( tiles.getTile( t ), glyph, attr, fgcol, bgcol, ulcol );
 				}
-				if ( ( attr & Attributes.ATTRF_STRIKE_DIAGONAL_TLBR ) != 0 ) {
-					int offs = 2 * CELL_WIDTH;
-					for ( int cx=0; cx < CELL_WIDTH; ++cx ) {
-						charBuf[ offs + cx*CELL_WIDTH + cx ] = 1;
-					}					
+				int[] tile = tiles.getTile( t );
+				if ( atCursor && curShape != TextScreen.CURSOR_BLOCK ) {
+					tile = drawCursor( tile, curShape, curBlink, curcol, curoff );
 				}
-				if ( ( attr & Attributes.ATTRF_STRIKE_DIAGONAL_BLTR ) != 0 ) {
-					int offs = 2 * CELL_WIDTH;
-					for ( int cx=0; cx < CELL_WIDTH; ++cx ) {
-						charBuf[ offs + cx*CELL_WIDTH + (CELL_WIDTH-1-cx) ] = 1;
-					}										
+				if ( trueColor ) {
+					// the tile is already in the raster's int layout: a block copy per pixel row
+					raster.setDataElements( x*CELL_WIDTH, y*CELL_HEIGHT, CELL_WIDTH, CELL_HEIGHT, tile );
 				}
-				if ( ( attr & Attributes.ATTRF_STRIKE_HORIZONTAL ) != 0 ) {
-					int offs = ( 2 + 5 ) * CELL_WIDTH;
-					for ( int cx=0; cx < CELL_WIDTH; ++cx ) {
-						charBuf[ offs + cx ] = 1;
-					}																				
+				else {
+					byte[] strip = strips[y];
+					for ( int cy=0, n=0, o=x*CELL_WIDTH; cy < CELL_HEIGHT; ++cy, n += CELL_WIDTH, o += stripWidth ) {
+						for ( int cx=0; cx < CELL_WIDTH; ++cx ) {
+							strip[ o + cx ] = (byte) tile[ n + cx ];
+						}
+					}
 				}
-				if ( ( attr & Attributes.ATTRF_STRIKE_VERTICAL ) != 0 ) {
-					int offs = 2 * CELL_WIDTH;
-					for ( int cx=0; cx < CELL_WIDTH; ++cx ) {
-						charBuf[ offs + cx*CELL_WIDTH + CELL_WIDTH/2 ] = 1;
-					}																				
+			}
+			if ( rowFrom[y] < rowTo[y] ) {
+				addRepaint( rowFrom[y], y, rowTo[y] );
+				if ( !trueColor ) {
+					// one block copy per changed row; the image stays managed, unlike after DataBuffer.getData()
+					raster.setDataElements( 0, y*CELL_HEIGHT, stripWidth, CELL_HEIGHT, strips[y] );
 				}
-				raster.setPixels( x*CELL_WIDTH, y*CELL_HEIGHT, CELL_WIDTH, CELL_HEIGHT, charBuf );
 			}
 		}
 	}
 	
-	public void update( Dimension size ) {
-		updateImage();
+	/**
+	 * Returns a copy of tile with an underline or bar cursor drawn over it
+	 * in color curcol. Like the block cursor, a blinking one is only shown
+	 * while the slow blink phase is on, and in color curoff otherwise.
+	 */
+	private int[] drawCursor( int[] tile, int shape, boolean blink, int curcol, int curoff ) {
+		System.arraycopy( tile, 0, cursorTile, 0, cursorTile.length );
+		int c = curcol;
+		if ( blink ) {
+			int e = trueColor ? -1 : blinkEntry( curoff, curcol, 1 );
+			if ( e >= 0 ) {
+				c = e;
+			}
+			else {
+				if ( !trueColor ) blinkOverflow = true;
+				if ( !blinkSlow ) return tile;
+			}
+		}
+		if ( shape == TextScreen.CURSOR_UNDERLINE ) {
+			Arrays.fill( cursorTile, ( CELL_HEIGHT - 2 ) * CELL_WIDTH, cursorTile.length, c );
+		}
+		else {
+			for ( int o=0; o < cursorTile.length; o += CELL_WIDTH ) {
+				cursorTile[o] = cursorTile[ o + 1 ] = c;
+			}
+		}
+		return cursorTile;
 	}
 	
-	public void paint( Graphics g, Dimension paintSize ) {
-		if ( image == null ) return;
-		
+	/**
+	 * Brings the image up to date with the text screen for a component of
+	 * the given size. Returns the area of the component that needs to be
+	 * repainted, or null if nothing changed.
+	 */
+	public Rectangle update( Dimension size ) {
+		return update( size, ( System.nanoTime() - epoch ) / 1000000 );
+	}
+
+	/**
+	 * Like update( size ), at the given time in milliseconds, which selects
+	 * the blink phases.
+	 */
+	Rectangle update( Dimension size, long millis ) {
+		updateImage( millis );
+		if ( image == null ) return null;
+		if ( !size.equals( paintedSize ) ) {
+			paintedSize = new Dimension( size );
+			return new Rectangle( 0, 0, size.width, size.height );
+		}
+		if ( repaintX0 >= repaintX1 ) return null;
+		Rectangle r = layout( size );
+		int scaleX = r.width  / image.getWidth();
+		int scaleY = r.height / image.getHeight();
+		return new Rectangle( r.x + repaintX0 * CELL_WIDTH * scaleX, r.y + repaintY0 * CELL_HEIGHT * scaleY, 
+				( repaintX1 - repaintX0 ) * CELL_WIDTH * scaleX, ( repaintY1 - repaintY0 ) * CELL_HEIGHT * scaleY );
+	}
+
+	/**
+	 * Returns the milliseconds from the last update until the next blink
+	 * phase change that shows on the screen, or -1 if nothing blinks.
+	 */
+	public long getBlinkDelay() {
+		long next;
+		if ( fastCells > 0 ) {
+			next = ( frameMillis / 250 + 1 ) * 250;
+		}
+		else if ( slowCells > 0 ) {
+			next = ( frameMillis / 500 + 1 ) * 500;
+		}
+		else {
+			return -1;
+		}
+		return next - frameMillis;
+	}
+
+	/**
+	 * Returns where the image is painted in a component of the given size:
+	 * scaled up by the largest whole factors that fit, and centered.
+	 */
+	private Rectangle layout( Dimension paintSize ) {
 		int scaleX = 1;
 		int scaleY = 1;
 		
@@ -283,6 +774,28 @@ public class GraphicsScreen {
 		int left   = ( paintSize.width  - paintW ) / 2;
 		int top    = ( paintSize.height - paintH ) / 2;
 		
+		return new Rectangle( left, top, paintW, paintH );
+	}
+	
+	/**
+	 * Paints the last finished frame; the next one is meanwhile drawn into
+	 * the other buffer, and the buffers are not swapped while painting.
+	 */
+	public void paint( Graphics g, Dimension paintSize ) {
+		synchronized ( paintLock ) {
+			paintImage( g, paintSize, image );
+		}
+	}
+
+	private void paintImage( Graphics g, Dimension paintSize, BufferedImage image ) {
+		if ( image == null ) return;
+		
+		Rectangle r = layout( paintSize );
+		int left   = r.x;
+		int top    = r.y;
+		int paintW = r.width;
+		int paintH = r.height;
+		
 		if ( top > 0 ) {
 			g.clearRect( 0,  0, paintSize.width, top );
 			g.clearRect( 0,  top + paintH, paintSize.width, paintSize.height - paintH - top );
@@ -302,6 +815,13 @@ public class GraphicsScreen {
 	public TextScreen getTextScreen() {
 		return textScr;
 	}
+
+	/**
+	 * Returns the cache of rendered cell tiles, for its statistics.
+	 */
+	public TileCache getTileCache() {
+		return tiles;
+	}
 	
 
 }
@@ -29,12 +29,12 @@ public class InputThread extends Thread {
 	private static final int 	BUFSIZ = 1024;
 	
 	private InputStream 		istream;
-	private TextScreen 			textScr;
+	private ByteRing 			ring;
 	private byte[] 				buffer;
 	
-	InputThread( InputStream istream_, TextScreen textScr_ ) {
+	InputThread( InputStream istream_, ByteRing ring_ ) {
 		istream = istream_;
-		textScr = textScr_;
+		ring 	= ring_;
 		buffer  = new byte[BUFSIZ];
 	}
 	
@@ -52,7 +52,7 @@ public class InputThread extends Thread {
 					buffer[0] = (byte) b;
 					avail = 1;
 				}
-				textScr.write( buffer, 0, avail );
+				ring.write( buffer, 0, avail );
 			}
 		} 
 		catch ( IOException e ) {
@@ -0,0 +1,122 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+package jtermemu;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains the byte rings filled by the InputThreads and runs the parser and
+ * screen model on that data. This is the only thread that writes to the
+ * TextScreen.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class ModelThread extends Thread {
+
+	public static final int 	RING_SIZE = 256 * 1024;
+	private static final int 	BATCH 	  = 64 * 1024;
+
+	private TextScreen 			textScr;
+	private ByteRing[] 			rings;
+	private byte[] 				batch;
+
+	// statistics
+	private volatile long 		bytes = 0;
+	private volatile long 		batches = 0;
+	private volatile long 		parseNanos = 0;
+	private volatile long 		maxParseNanos = 0;
+
+	ModelThread( TextScreen textScr_, int nrings ) {
+		super( "ModelThread" );
+		setDaemon( true );
+		textScr = textScr_;
+		batch 	= new byte [BATCH];
+		rings 	= new ByteRing [nrings];
+		for ( int i=0; i < nrings; ++i ) {
+			rings[i] = new ByteRing( RING_SIZE, this );
+		}
+	}
+
+	public ByteRing getRing( int index ) {
+		return rings[index];
+	}
+
+	private boolean allEmpty() {
+		for ( ByteRing ring : rings ) {
+			if ( !ring.isEmpty() ) return false;
+		}
+		return true;
+	}
+
+	public void run() {
+		for (;;) {
+			boolean any = false;
+			for ( ByteRing ring : rings ) {
+				int n = ring.read( batch, 0, BATCH );
+				if ( n > 0 ) {
+					long t0 = System.nanoTime();
+					textScr.write( batch, 0, n );
+					long t = System.nanoTime() - t0;
+					parseNanos += t;
+					if ( t > maxParseNanos ) maxParseNanos = t;
+					bytes += n;
+					++batches;
+					any = true;
+				}
+			}
+			if ( any ) continue;
+			for ( ByteRing ring : rings ) ring.prepareWait();
+			if ( allEmpty() ) {
+				LockSupport.park( this );
+			}
+			for ( ByteRing ring : rings ) ring.cancelWait();
+		}
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public long getBatches() {
+		return batches;
+	}
+
+	public long getParseNanos() {
+		return parseNanos;
+	}
+
+	public long getMaxParseNanos() {
+		return maxParseNanos;
+	}
+
+	public String getStatistics() {
+		long maxQueue = 0, stalls = 0;
+		for ( ByteRing ring : rings ) {
+			maxQueue = Math.max( maxQueue, ring.getMaxQueueNanos() );
+			stalls 	+= ring.getProducerStalls();
+		}
+		return String.format( "%d bytes in %d batches, parse %.1f ns/byte (max %.2f ms per batch), max queue wait %.2f ms, %d reader stalls",
+				bytes, batches, bytes > 0 ? (double) parseNanos / bytes : 0.0, maxParseNanos / 1e6, maxQueue / 1e6, stalls );
+	}
+
+}
@@ -0,0 +1,184 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe
+*/
+
+package jtermemu;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Growable byte buffer for OSC string payloads, stored UTF-8 encoded.
+ *
+ * The buffer doubles its capacity as needed, up to a maximum size. Once a
+ * payload exceeds the maximum, the rest of it is discarded without copying
+ * and the payload is flagged as overflowed, so it can be dropped as a whole.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class OscBuffer {
+
+	public static final int DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+
+	private static final int INITIAL_SIZE = 256;
+
+	private byte[] data;
+	private int length;
+	private int maxSize;
+	private boolean overflow;
+
+	public OscBuffer() {
+		this( DEFAULT_MAX_SIZE );
+	}
+
+	public OscBuffer( int maxSize_ ) {
+		maxSize = maxSize_;
+		data 	= new byte [ Math.min( INITIAL_SIZE, maxSize ) ];
+	}
+
+	public void clear() {
+		length 	 = 0;
+		overflow = false;
+	}
+
+	private boolean reserve( int n ) {
+		if ( length + n <= data.length ) return true;
+		if ( length + n > maxSize ) {
+			overflow = true;
+			return false;
+		}
+		int size = data.length;
+		while ( size < length + n ) size *= 2;
+		if ( size > maxSize ) size = maxSize;
+		byte[] temp = new byte [size];
+		System.arraycopy( data, 0, temp, 0, length );
+		data = temp;
+		return true;
+	}
+
+	public void append( int cp ) {
+		if ( overflow ) return;
+		if ( cp < 0x80 ) {
+			if ( reserve( 1 ) ) {
+				data[ length++ ] = (byte) cp;
+			}
+		}
+		else if ( cp < 0x800 ) {
+			if ( reserve( 2 ) ) {
+				data[ length++ ] = (byte)( 0xc0 | ( cp >> 6 ) );
+				data[ length++ ] = (byte)( 0x80 | ( cp & 63 ) );
+			}
+		}
+		else if ( cp < 0x10000 ) {
+			if ( reserve( 3 ) ) {
+				data[ length++ ] = (byte)( 0xe0 | ( cp >> 12 ) );
+				data[ length++ ] = (byte)( 0x80 | ( ( cp >> 6 ) & 63 ) );
+				data[ length++ ] = (byte)( 0x80 | ( cp & 63 ) );
+			}
+		}
+		else if ( reserve( 4 ) ) {
+			data[ length++ ] = (byte)( 0xf0 | ( cp >> 18 ) );
+			data[ length++ ] = (byte)( 0x80 | ( ( cp >> 12 ) & 63 ) );
+			data[ length++ ] = (byte)( 0x80 | ( ( cp >> 6 ) & 63 ) );
+			data[ length++ ] = (byte)( 0x80 | ( cp & 63 ) );
+		}
+	}
+
+	/**
+	 * Appends cps[from..to). Runs of ASCII are copied without encoding.
+	 */
+	public void append( int[] cps, int from, int to ) {
+		while ( from < to && !overflow ) {
+			int i = from;
+			while ( i < to && cps[i] < 0x80 ) ++i;
+			if ( i > from && reserve( i - from ) ) {
+				for ( int k=from; k < i; ++k ) {
+					data[ length++ ] = (byte) cps[k];
+				}
+			}
+			if ( i < to ) {
+				append( cps[i++] );
+			}
+			from = i;
+		}
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public boolean hasOverflowed() {
+		return overflow;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public void setMaxSize( int maxSize_ ) {
+		maxSize = maxSize_;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public int byteAt( int pos ) {
+		return data[pos] & 255;
+	}
+
+	/**
+	 * Returns the position of the first occurrence of b in [from..to), or -1.
+	 */
+	public int indexOf( int b, int from, int to ) {
+		for ( int i=from; i < to; ++i ) {
+			if ( data[i] == (byte) b ) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses [from..to) as a decimal number. Returns -1 if the range is empty,
+	 * contains anything but digits or is too long to be a selector.
+	 */
+	public int parseInt( int from, int to ) {
+		if ( from >= to || to - from > 9 ) return -1;
+		int v = 0;
+		for ( int i=from; i < to; ++i ) {
+			int c = data[i];
+			if ( c < '0' || c > '9' ) return -1;
+			v = v * 10 + ( c - '0' );
+		}
+		return v;
+	}
+
+	public boolean equals( int from, int to, String s ) {
+		if ( to - from != s.length() ) return false;
+		for ( int i=0; i < s.length(); ++i ) {
+			if ( data[ from + i ] != (byte) s.charAt(i) ) return false;
+		}
+		return true;
+	}
+
+	public String toString( int from, int to ) {
+		return new String( data, from, to - from, StandardCharsets.UTF_8 );
+	}
+
+}
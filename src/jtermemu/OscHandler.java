@@ -0,0 +1,37 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe
+*/
+
+package jtermemu;
+
+/**
+ * Handler for one OSC selector (the number before the first ';').
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+public interface OscHandler {
+
+	/**
+	 * Handles an OSC string. The payload after "selector;" is buf[from..to).
+	 */
+	void handle( int selector, OscBuffer buf, int from, int to );
+
+}
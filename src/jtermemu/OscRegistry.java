@@ -0,0 +1,63 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe
+*/
+
+package jtermemu;
+
+/**
+ * OSC handlers, indexed by numeric selector.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class OscRegistry {
+
+	private OscHandler[] handlers = new OscHandler [16];
+
+	public void register( int selector, OscHandler handler ) {
+		if ( selector >= handlers.length ) {
+			OscHandler[] temp = new OscHandler [ selector + 1 ];
+			System.arraycopy( handlers, 0, temp, 0, handlers.length );
+			handlers = temp;
+		}
+		handlers[ selector ] = handler;
+	}
+
+	/**
+	 * Dispatches a complete OSC string to the handler for its selector.
+	 * Overflowed payloads and unknown selectors are dropped.
+	 */
+	public void dispatch( OscBuffer buf ) {
+		int len = buf.length();
+		if ( buf.hasOverflowed() ) {
+			System.out.printf( "OSC string longer than %d bytes dropped\n", buf.getMaxSize() );
+			return;
+		}
+		int pos = buf.indexOf( ';', 0, len );
+		int end = pos >= 0 ? pos : len;
+		int selector = buf.parseInt( 0, end );
+		if ( selector < 0 || selector >= handlers.length || handlers[ selector ] == null ) {
+			System.out.printf( "Unsupported OSC sequence: %s\n", buf.toString( 0, Math.min( end, 16 ) ) );
+			return;
+		}
+		handlers[ selector ].handle( selector, buf, pos >= 0 ? pos + 1 : len, len );
+	}
+
+}
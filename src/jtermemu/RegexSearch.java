@@ -0,0 +1,202 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+package jtermemu;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Regular expression search over the scrollback history.
+ *
+ * The history is split into its blocks (segments), which are searched in
+ * parallel on a ForkJoinPool. Each line is decoded on its own and matched
+ * through a CharSequence view of its characters, so neither the history
+ * nor a line is ever turned into a String. Results are reported to the
+ * listener newest first, in order, as soon as all newer segments are
+ * done. Starting a new search cancels the one still running, so the
+ * search can follow a query as it is typed.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class RegexSearch {
+
+	private TextScreen 		textScr;
+	private ForkJoinPool 	pool;
+	private Search 			current = null;
+
+	public RegexSearch( TextScreen textScr_ ) {
+		this( textScr_, new ForkJoinPool() );
+	}
+
+	public RegexSearch( TextScreen textScr_, ForkJoinPool pool_ ) {
+		textScr = textScr_;
+		pool 	= pool_;
+	}
+
+	/**
+	 * Cancels the running search, if any, and starts searching the
+	 * scrollback history for lines in which pattern finds a match.
+	 */
+	public synchronized void start( Pattern pattern, SearchListener listener ) {
+		cancel();
+		current = new Search( textScr.scrollbackSegments(), pattern, listener );
+		pool.execute( current.new Part( 0, current.segments.length ) );
+	}
+
+	/**
+	 * Cancels the running search. The listener gets no further calls.
+	 */
+	public synchronized void cancel() {
+		if ( current != null ) {
+			current.cancel();
+			current = null;
+		}
+	}
+
+	/**
+	 * Characters of one line as a CharSequence, decoded from the UTF-8
+	 * text of the line into a reused array.
+	 */
+	private static class LineText implements CharSequence {
+		byte[] 	utf8;
+		char[] 	text;
+		int 	length;
+
+		LineText( int maxBytes ) {
+			utf8 = new byte [ maxBytes ];
+			text = new char [ maxBytes ];	// UTF-8 never has fewer bytes than UTF-16 chars
+		}
+
+		public int length() {
+			return length;
+		}
+
+		public char charAt( int index ) {
+			return text[index];
+		}
+
+		public CharSequence subSequence( int start, int end ) {
+			return new String( text, start, end - start );
+		}
+
+		public String toString() {
+			return new String( text, 0, length );
+		}
+	}
+
+	private static class Search {
+		private Scrollback.Segment[] 	segments;	// newest first
+		private Pattern 				pattern;
+		private SearchListener 			listener;
+		private long[][] 				results;	// per segment, until reported
+		private int[] 					counts;
+		private boolean[] 				done;
+		private int 					nextToReport = 0;
+		private volatile boolean 		cancelled = false;
+
+		Search( Scrollback.Segment[] segments_, Pattern pattern_, SearchListener listener_ ) {
+			segments = segments_;
+			pattern  = pattern_;
+			listener = listener_;
+			results  = new long [ segments.length ][];
+			counts 	 = new int [ segments.length ];
+			done 	 = new boolean [ segments.length ];
+			if ( segments.length == 0 ) {
+				listener.finished();
+			}
+		}
+
+		synchronized void cancel() {
+			cancelled = true;
+		}
+
+		void searchSegment( int index ) {
+			Scrollback.Segment seg = segments[index];
+			LineText text = new LineText( seg.getMaxLineBytes() );
+			Matcher m = pattern.matcher( text );
+			long[] found = new long [16];
+			int n = 0;
+			for ( int i=seg.getLines()-1; i >= 0; --i ) {
+				if ( cancelled ) return;
+				text.length = Scrollback.toChars( text.utf8, seg.getText( i, text.utf8 ), text.text );
+				m.reset( text );
+				if ( m.find() ) {
+					if ( n == found.length ) {
+						long[] temp = new long [ n * 2 ];
+						System.arraycopy( found, 0, temp, 0, n );
+						found = temp;
+					}
+					found[n++] = seg.getFirstLine() + i;
+				}
+			}
+			report( index, found, n );
+		}
+
+		/**
+		 * Records the results of a segment, then hands on those of all
+		 * segments that are complete up to the first one still running.
+		 */
+		private synchronized void report( int index, long[] found, int n ) {
+			if ( cancelled ) return;
+			results[index] = found;
+			counts[index]  = n;
+			done[index]    = true;
+			while ( nextToReport < segments.length && done[ nextToReport ] ) {
+				if ( counts[ nextToReport ] > 0 ) {
+					listener.found( results[ nextToReport ], counts[ nextToReport ] );
+				}
+				results[ nextToReport++ ] = null;
+			}
+			if ( nextToReport == segments.length ) {
+				listener.finished();
+			}
+		}
+
+		/**
+		 * Searches segments[from..to), splitting the range in halves.
+		 */
+		class Part extends RecursiveAction {
+			private static final long serialVersionUID = 1L;
+			private int from, to;
+
+			Part( int from_, int to_ ) {
+				from = from_;
+				to 	 = to_;
+			}
+
+			protected void compute() {
+				if ( cancelled ) return;
+				if ( to - from == 1 ) {
+					searchSegment( from );
+				}
+				else if ( to - from > 1 ) {
+					int mid = ( from + to ) >>> 1;
+					invokeAll( new Part( from, mid ), new Part( mid, to ) );
+				}
+			}
+		}
+	}
+
+}
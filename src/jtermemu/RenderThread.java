@@ -0,0 +1,135 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+
+package jtermemu;
+
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the frames, which draw the screen into the back buffer, on a thread
+ * of their own, so that expensive redraws never hold up the event dispatch
+ * thread, and only when there is something new to show.
+ *
+ * Any thread can ask for a frame with request(); requests that arrive
+ * before the frame runs are coalesced into it, and frames are spaced at
+ * least one display refresh period apart. A frame itself can ask for the
+ * next one after a delay, e.g. for the next blink phase. With nothing to
+ * do, the thread stays parked.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class RenderThread extends Thread {
+
+	/**
+	 * A frame: returns the milliseconds until the next frame is due even
+	 * without a request, or -1 if there is none.
+	 */
+	public interface Frame {
+		long run();
+	}
+
+	private static final int 	DEFAULT_REFRESH_RATE = 60;
+
+	private Frame 				frame;
+	private long 				period;				// nanoseconds between frames
+	private volatile boolean 	requested = false;
+
+	// statistics
+	private volatile long 		frames = 0;
+	private volatile long 		frameNanos = 0;
+	private volatile long 		maxFrameNanos = 0;
+
+	RenderThread( Frame frame_ ) {
+		this( frame_, displayRefreshRate() );
+	}
+
+	RenderThread( Frame frame_, int refreshRate ) {
+		super( "RenderThread" );
+		setDaemon( true );
+		frame  = frame_;
+		period = 1000000000L / refreshRate;
+	}
+
+	/**
+	 * Returns the refresh rate of the default screen, or 60 Hz if it is
+	 * unknown.
+	 */
+	public static int displayRefreshRate() {
+		if ( GraphicsEnvironment.isHeadless() ) return DEFAULT_REFRESH_RATE;
+		int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+				.getDisplayMode().getRefreshRate();
+		return rate != DisplayMode.REFRESH_RATE_UNKNOWN ? rate : DEFAULT_REFRESH_RATE;
+	}
+
+	/**
+	 * Asks for a frame as soon as the refresh rate allows. May be called
+	 * from any thread.
+	 */
+	public void request() {
+		if ( !requested ) {
+			requested = true;
+			LockSupport.unpark( this );
+		}
+	}
+
+	public void run() {
+		long lastFrame = System.nanoTime() - period;
+		long due 	   = 0;		// nanoTime when the next frame is due without a request
+		boolean timed  = false;
+		for (;;) {
+			long now = System.nanoTime();
+			if ( !requested && !( timed && now - due >= 0 ) ) {
+				if ( timed ) {
+					LockSupport.parkNanos( this, due - now );
+				}
+				else {
+					LockSupport.park( this );
+				}
+				continue;
+			}
+			long wait = lastFrame + period - now;
+			if ( wait > 0 ) {
+				LockSupport.parkNanos( this, wait );	// requests meanwhile are coalesced
+				continue;
+			}
+			// clear first: whatever changes while the frame runs asks for the next one
+			requested = false;
+			lastFrame = now;
+			long delay = frame.run();
+			long t 	   = System.nanoTime() - now;
+			frameNanos += t;
+			if ( t > maxFrameNanos ) maxFrameNanos = t;
+			++frames;
+			timed = delay >= 0;
+			due   = now + t + delay * 1000000;
+		}
+	}
+
+	public String getStatistics() {
+		return String.format( "%d frames, %.1f us per frame (max %.2f ms)", 
+				frames, frames > 0 ? frameNanos / 1e3 / frames : 0.0, maxFrameNanos / 1e6 );
+	}
+
+}
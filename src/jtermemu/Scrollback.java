@@ -0,0 +1,679 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+package jtermemu;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Scrollback history for lines that scrolled off the top of the screen.
+ * 
+ * Lines are stored compressed: trailing blanks are trimmed, and the rest
+ * is kept as the line's characters in UTF-8 followed by its style runs
+ * (length, style) as variable-length integers. A line is only decoded
+ * back into cells when it is read, e.g. because it became visible.
+ * 
+ * Encoded lines are appended to a block on the heap. When that block is
+ * full, it is sealed and moved into off-heap memory (a direct buffer), so
+ * a long history costs almost nothing in garbage collection. Memory use is
+ * bounded by a line budget and a byte budget; when either is exceeded, the
+ * oldest block is evicted as a whole.
+ * 
+ * Every sealed block carries a TrigramIndex over its lines, so search()
+ * only has to verify the lines the index names as candidates; the block
+ * still being filled is scanned. The index is evicted with its block.
+ * 
+ * Lines are addressed by age: age 0 is the line that scrolled off last.
+ * Search results are line numbers, which count all lines ever pushed and
+ * so stay valid while more lines arrive; ageOf() turns them into ages.
+ * 
+ * Line format:
+ * 
+ * 	<length> <fillStyle> <textBytes> <text> ( <runLength> <style> )*
+ * 
+ * where length is the number of cells before the trailing blanks, and
+ * fillStyle the style of those blanks. text holds the characters of the
+ * length cells in UTF-8, textBytes long. The runs cover exactly length
+ * cells. Styles are numbers into a list kept per block, which holds
+ * copies of the StyleTable styles its lines use: the history never keeps
+ * table ids alive, and reading a line interns its styles again.
+ * 
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class Scrollback {
+
+	public static final int 	DEFAULT_MAX_LINES = 100000;
+	public static final long 	DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+	private static final int 	BLOCK_BYTES 	  = 64 * 1024;
+	private static final int 	BLOCK_LINES 	  = 4096;
+	private static final int 	STYLE_DEF_BYTES   = 20;
+
+	/**
+	 * Read-only view of one block, for searching on other threads. Views
+	 * of sealed blocks share their off-heap memory, which never changes;
+	 * the view of the block being filled holds a copy of its lines.
+	 */
+	static class Segment {
+		private long 		first;
+		private int 		lines;
+		private int[] 		offs;
+		private byte[] 		heap;
+		private ByteBuffer 	offHeap;
+		private int 		maxLineBytes;
+
+		long getFirstLine() {
+			return first;
+		}
+
+		int getLines() {
+			return lines;
+		}
+
+		/**
+		 * Returns the size a buffer for getText() needs.
+		 */
+		int getMaxLineBytes() {
+			return maxLineBytes;
+		}
+
+		/**
+		 * Copies the text of line i (0 = oldest in the segment) to dst as
+		 * UTF-8 and returns its length in bytes.
+		 */
+		int getText( int i, byte[] dst ) {
+			int pos = offs[i];
+			byte[] data = heap;
+			if ( data == null ) {
+				offHeap.get( pos, dst, 0, offs[i+1] - pos );
+				data = dst;
+				pos  = 0;
+			}
+			int len = textLength( data, pos );
+			System.arraycopy( data, textStart( data, pos ), dst, 0, len );
+			return len;
+		}
+	}
+
+	private static class Block {
+		byte[] 		heap;		// while the block is being filled
+		ByteBuffer 	offHeap;	// after it was sealed
+		int[] 		offs;		// start of each line, plus end of the last one
+		int 		lines = 0;
+		long 		first;		// number of the first line in this block
+		TrigramIndex index;		// after it was sealed
+		int[] 		styleDefs = new int [ 4 * 16 ];	// fg, bg, attr, underline per block style
+		String[] 	styleLinks = new String [ 16 ];
+		int 		nstyles = 0;
+		int[] 		tableIds = null;	// block style -> StyleTable id, or -1
+		int 		tableEpoch;			// epoch tableIds belong to
+	}
+
+	private StyleTable 			styleTable;
+	private int 				width;
+	private int 				maxLines;
+	private long 				maxBytes;
+	private int 				blockLines;
+	private ArrayList<Block> 	blocks;		// oldest first; the last one is on the heap
+	private long 				next = 0;	// number of the next line to be pushed
+	private int 				lines = 0;
+	private long 				bytes = 0;	// encoded bytes held, including line offsets and indexes
+	private long 				offHeapBytes = 0;
+	private byte[] 				scratch;
+	private byte[] 				spareHeap = null;
+	private int[] 				localOf = new int [ 256 ];		// StyleTable id -> style of the open block
+	private int[] 				localStamp = new int [ 256 ];	// valid where equal to stamp
+	private int 				stamp = 0;
+	private int 				stampEpoch = -1;
+
+	public Scrollback( StyleTable styleTable_, int width_, int maxLines_, long maxBytes_ ) {
+		styleTable = styleTable_;
+		width 	   = width_;
+		maxLines   = Math.max( 0, maxLines_ );
+		maxBytes   = maxBytes_;
+		// evicting a block should never cost more than about an eighth of the lines
+		blockLines = Math.max( 1, Math.min( BLOCK_LINES, maxLines / 8 ) );
+		blocks 	   = new ArrayList<Block>();
+		scratch    = new byte [ 15 + width * 11 ];	// worst case encoded line
+	}
+
+	private static int putVarint( byte[] dst, int pos, int v ) {
+		while ( ( v & ~0x7f ) != 0 ) {
+			dst[pos++] = (byte)( ( v & 0x7f ) | 0x80 );
+			v >>>= 7;
+		}
+		dst[pos++] = (byte) v;
+		return pos;
+	}
+
+	/**
+	 * Encodes the cells chars / styles[offs..offs+width) into scratch and
+	 * returns the encoded length.
+	 */
+	private int encode( Block blk, int[] chars, char[] styles, int offs ) {
+		int fill = styles[ offs + width - 1 ];
+		int len  = width;
+		if ( chars[ offs + width - 1 ] == 0x20 ) {
+			while ( len > 0 && chars[ offs + len - 1 ] == 0x20 && styles[ offs + len - 1 ] == fill ) --len;
+		}
+		int pos = putVarint( scratch, 0, len );
+		pos = putVarint( scratch, pos, local( blk, fill ) );
+		int header = pos;
+		// assume ASCII, where the text has one byte per cell
+		pos = putVarint( scratch, pos, len );
+		int runs = pos + len;
+		int wide = 0, style = -1, runStart = 0;
+		for ( int i=0; i < len; ++i ) {
+			int c = chars[ offs + i ];
+			wide |= c;
+			scratch[ pos + i ] = (byte) c;
+			int st = styles[ offs + i ];
+			if ( st != style ) {
+				if ( i > 0 ) {
+					runs = putVarint( scratch, runs, i - runStart );
+					runs = putVarint( scratch, runs, local( blk, style ) );
+				}
+				style 	 = st;
+				runStart = i;
+			}
+		}
+		if ( ( wide & ~0x7f ) != 0 ) {
+			return encodeUtf8( blk, chars, styles, offs, len, header );
+		}
+		if ( len > 0 ) {
+			runs = putVarint( scratch, runs, len - runStart );
+			runs = putVarint( scratch, runs, local( blk, style ) );
+		}
+		return runs;
+	}
+
+	/**
+	 * Encodes the text and style runs of a line that is not pure ASCII,
+	 * continuing after the header that encode() left in scratch[0..pos).
+	 */
+	private int encodeUtf8( Block blk, int[] chars, char[] styles, int offs, int len, int pos ) {
+		// encode the text behind room for its length, then close the gap
+		int text = pos + 3, end = text;
+		for ( int i=0; i < len; ++i ) {
+			int c = chars[ offs + i ];
+			if ( c < 0x80 ) {
+				scratch[ end++ ] = (byte) c;
+			}
+			else {
+				end = putUtf8( scratch, end, c );
+			}
+		}
+		pos = putVarint( scratch, pos, end - text );
+		System.arraycopy( scratch, text, scratch, pos, end - text );
+		pos += end - text;
+		int style = -1, runStart = 0;
+		for ( int i=0; i < len; ++i ) {
+			int st = styles[ offs + i ];
+			if ( st != style ) {
+				if ( i > 0 ) {
+					pos = putVarint( scratch, pos, i - runStart );
+					pos = putVarint( scratch, pos, local( blk, style ) );
+				}
+				style 	 = st;
+				runStart = i;
+			}
+		}
+		pos = putVarint( scratch, pos, len - runStart );
+		pos = putVarint( scratch, pos, local( blk, style ) );
+		return pos;
+	}
+
+	/**
+	 * Returns the number of StyleTable style id within blk, adding a copy
+	 * of the style to the block if it has none yet.
+	 */
+	private int local( Block blk, int id ) {
+		if ( id < localStamp.length && localStamp[id] == stamp ) {
+			return localOf[id];
+		}
+		if ( id >= localStamp.length ) {
+			int n = Math.max( id + 1, localStamp.length * 2 );
+			localOf    = Arrays.copyOf( localOf, n );
+			localStamp = Arrays.copyOf( localStamp, n );
+		}
+		int l = blk.nstyles++;
+		if ( l == blk.styleLinks.length ) {
+			blk.styleDefs  = Arrays.copyOf( blk.styleDefs, 4 * l * 2 );
+			blk.styleLinks = Arrays.copyOf( blk.styleLinks, l * 2 );
+		}
+		blk.styleDefs[ 4*l ] 	 = styleTable.getForeground( id );
+		blk.styleDefs[ 4*l + 1 ] = styleTable.getBackground( id );
+		blk.styleDefs[ 4*l + 2 ] = styleTable.getAttributes( id );
+		blk.styleDefs[ 4*l + 3 ] = styleTable.getUnderlineColor( id );
+		blk.styleLinks[l] 		 = styleTable.getLinkURI( styleTable.getLink( id ) );
+		bytes += STYLE_DEF_BYTES;
+		localOf[id]    = l;
+		localStamp[id] = stamp;
+		return l;
+	}
+
+	/**
+	 * Returns the StyleTable id of style l of blk, interning it again if
+	 * necessary.
+	 */
+	private int tableId( Block blk, int l ) {
+		if ( blk.tableIds == null || blk.tableEpoch != styleTable.getEpoch() ) {
+			blk.tableIds = new int [ blk.nstyles ];
+			Arrays.fill( blk.tableIds, -1 );
+			blk.tableEpoch = styleTable.getEpoch();
+		}
+		else if ( blk.tableIds.length < blk.nstyles ) {
+			int n = blk.tableIds.length;
+			blk.tableIds = Arrays.copyOf( blk.tableIds, blk.nstyles );
+			Arrays.fill( blk.tableIds, n, blk.nstyles, -1 );
+		}
+		int id = blk.tableIds[l];
+		if ( id < 0 ) {
+			id = styleTable.intern( blk.styleDefs[ 4*l ], blk.styleDefs[ 4*l + 1 ], blk.styleDefs[ 4*l + 2 ], 
+					blk.styleDefs[ 4*l + 3 ], styleTable.internLink( blk.styleLinks[l] ) );
+			if ( id < 0 ) id = 0;
+			blk.tableIds[l] = id;
+		}
+		return id;
+	}
+
+	private static int putUtf8( byte[] dst, int pos, int c ) {
+		if ( c < 0x80 ) {
+			dst[pos++] = (byte) c;
+		}
+		else if ( c < 0x800 ) {
+			dst[pos++] = (byte)( 0xc0 | ( c >> 6 ) );
+			dst[pos++] = (byte)( 0x80 | ( c & 63 ) );
+		}
+		else if ( c < 0x10000 ) {
+			dst[pos++] = (byte)( 0xe0 | ( c >> 12 ) );
+			dst[pos++] = (byte)( 0x80 | ( ( c >> 6 ) & 63 ) );
+			dst[pos++] = (byte)( 0x80 | ( c & 63 ) );
+		}
+		else {
+			dst[pos++] = (byte)( 0xf0 | ( c >> 18 ) );
+			dst[pos++] = (byte)( 0x80 | ( ( c >> 12 ) & 63 ) );
+			dst[pos++] = (byte)( 0x80 | ( ( c >> 6 ) & 63 ) );
+			dst[pos++] = (byte)( 0x80 | ( c & 63 ) );
+		}
+		return pos;
+	}
+
+	/**
+	 * Reads the code point at data[p[0]..] (written by putUtf8) and
+	 * advances p[0] past it.
+	 */
+	private static int getUtf8( byte[] data, int[] p ) {
+		int pos = p[0];
+		int b 	= data[pos] & 255;
+		int c;
+		if ( b < 0x80 ) {
+			c = b;
+			pos += 1;
+		}
+		else if ( b < 0xe0 ) {
+			c = ( ( b & 0x1f ) << 6 ) | ( data[pos+1] & 63 );
+			pos += 2;
+		}
+		else if ( b < 0xf0 ) {
+			c = ( ( b & 0x0f ) << 12 ) | ( ( data[pos+1] & 63 ) << 6 ) | ( data[pos+2] & 63 );
+			pos += 3;
+		}
+		else {
+			c = ( ( b & 0x07 ) << 18 ) | ( ( data[pos+1] & 63 ) << 12 ) | ( ( data[pos+2] & 63 ) << 6 ) | ( data[pos+3] & 63 );
+			pos += 4;
+		}
+		p[0] = pos;
+		return c;
+	}
+
+	/**
+	 * Decodes the UTF-8 text src[0..len) into UTF-16 chars in dst and
+	 * returns their number.
+	 */
+	static int toChars( byte[] src, int len, char[] dst ) {
+		int[] p = { 0 };
+		int n = 0;
+		while ( p[0] < len ) {
+			n += Character.toChars( getUtf8( src, p ), dst, n );
+		}
+		return n;
+	}
+
+	/**
+	 * Decodes the line at data[pos..] into chars / styles[offs..offs+width).
+	 */
+	private void decode( Block blk, byte[] data, int pos, int[] chars, char[] styles, int offs ) {
+		int[] p = { pos };
+		int len  = getVarint( data, p );
+		int fill = getVarint( data, p );
+		int nbytes = getVarint( data, p );
+		int[] t = { p[0] };
+		if ( nbytes == len ) {
+			for ( int i=0; i < len; ++i ) {
+				chars[ offs + i ] = data[ t[0] + i ];
+			}
+		}
+		else {
+			for ( int i=0; i < len; ++i ) {
+				chars[ offs + i ] = getUtf8( data, t );
+			}
+		}
+		p[0] += nbytes;
+		int x = 0;
+		while ( x < len ) {
+			int n 	  = getVarint( data, p );
+			char style = (char) tableId( blk, getVarint( data, p ) );
+			Arrays.fill( styles, offs + x, offs + x + n, style );
+			x += n;
+		}
+		Arrays.fill( chars, offs + x, offs + width, 0x20 );
+		Arrays.fill( styles, offs + x, offs + width, (char) tableId( blk, fill ) );
+	}
+
+	/**
+	 * Returns the length in bytes of the UTF-8 text of the encoded line at
+	 * data[pos..].
+	 */
+	private static int textLength( byte[] data, int pos ) {
+		int[] p = { pos };
+		getVarint( data, p );
+		getVarint( data, p );
+		return getVarint( data, p );
+	}
+
+	/**
+	 * Returns where the UTF-8 text of the encoded line at data[pos..] starts.
+	 */
+	private static int textStart( byte[] data, int pos ) {
+		int[] p = { pos };
+		getVarint( data, p );
+		getVarint( data, p );
+		getVarint( data, p );
+		return p[0];
+	}
+
+	private static int getVarint( byte[] data, int[] p ) {
+		int pos = p[0], v = 0, shift = 0, b;
+		do {
+			b = data[pos++];
+			v |= ( b & 0x7f ) << shift;
+			shift += 7;
+		} while ( b < 0 );
+		p[0] = pos;
+		return v;
+	}
+
+	/**
+	 * Appends the line at chars / styles[offs..offs+width) as the newest
+	 * line.
+	 */
+	public void push( int[] chars, char[] styles, int offs ) {
+		if ( maxLines == 0 ) return;
+		Block blk = blocks.isEmpty() ? null : blocks.get( blocks.size() - 1 );
+		if ( stampEpoch != styleTable.getEpoch() ) {
+			// ids may have been reused for other styles
+			++stamp;
+			stampEpoch = styleTable.getEpoch();
+		}
+		int n = blk != null ? encode( blk, chars, styles, offs ) : 0;
+		if ( blk == null || blk.lines == blockLines || blk.offs[ blk.lines ] + n > BLOCK_BYTES ) {
+			if ( blk != null ) seal( blk );
+			blk = new Block();
+			blk.heap  = spareHeap != null ? spareHeap : new byte [ BLOCK_BYTES ];
+			spareHeap = null;
+			blk.offs  = new int [ blockLines + 1 ];
+			blk.first = next;
+			blocks.add( blk );
+			++stamp;
+			n = encode( blk, chars, styles, offs );
+		}
+		int pos = blk.offs[ blk.lines ];
+		System.arraycopy( scratch, 0, blk.heap, pos, n );
+		blk.offs[ ++blk.lines ] = pos + n;
+		++next;
+		++lines;
+		bytes += n + 4;
+		while ( ( lines > maxLines || bytes > maxBytes ) && blocks.size() > 1 ) {
+			evict();
+		}
+	}
+
+	/**
+	 * Moves a full block off the heap.
+	 */
+	private void seal( Block blk ) {
+		int used = blk.offs[ blk.lines ];
+		int[] textStart  = new int [ blk.lines ];
+		int[] textLength = new int [ blk.lines ];
+		for ( int i=0; i < blk.lines; ++i ) {
+			textStart[i]  = textStart( blk.heap, blk.offs[i] );
+			textLength[i] = textLength( blk.heap, blk.offs[i] );
+		}
+		blk.index = new TrigramIndex( blk.heap, textStart, textLength, blk.lines );
+		bytes += blk.index.sizeInBytes();
+		blk.offHeap = ByteBuffer.allocateDirect( used );
+		blk.offHeap.put( 0, blk.heap, 0, used );
+		spareHeap = blk.heap;
+		blk.heap  = null;
+		if ( blk.lines < blk.offs.length - 1 ) {
+			int[] offs = new int [ blk.lines + 1 ];
+			System.arraycopy( blk.offs, 0, offs, 0, offs.length );
+			blk.offs = offs;
+		}
+		offHeapBytes += used;
+	}
+
+	private void evict() {
+		Block blk = blocks.remove( 0 );
+		lines -= blk.lines;
+		bytes -= blk.offs[ blk.lines ] + 4L * blk.lines + (long) STYLE_DEF_BYTES * blk.nstyles;
+		if ( blk.index != null ) {
+			bytes -= blk.index.sizeInBytes();
+		}
+		if ( blk.offHeap != null ) {
+			offHeapBytes -= blk.offs[ blk.lines ];
+		}
+	}
+
+	/**
+	 * Copies the line of the given age into chars / styles[offs..offs+width).
+	 */
+	public void getLine( int age, int[] chars, char[] styles, int offs ) {
+		long line = next - 1 - age;
+		// binary search for the block holding the line
+		int lo = 0, hi = blocks.size() - 1;
+		while ( lo < hi ) {
+			int mid = ( lo + hi + 1 ) >>> 1;
+			if ( blocks.get( mid ).first <= line ) lo = mid; else hi = mid - 1;
+		}
+		Block blk = blocks.get( lo );
+		int index = (int)( line - blk.first );
+		int start = blk.offs[ index ];
+		if ( blk.heap != null ) {
+			decode( blk, blk.heap, start, chars, styles, offs );
+		}
+		else {
+			int n = blk.offs[ index + 1 ] - start;
+			blk.offHeap.get( start, scratch, 0, n );
+			decode( blk, scratch, 0, chars, styles, offs );
+		}
+	}
+
+	/**
+	 * Finds the lines containing query, newest first, and returns their
+	 * line numbers; at most maxResults are returned. With ignoreCase, ASCII
+	 * letters match regardless of case.
+	 * 
+	 * @throws IllegalArgumentException if query is null or maxResults is
+	 * negative
+	 */
+	public long[] search( String query, boolean ignoreCase, int maxResults ) {
+		if ( query == null ) {
+			throw new IllegalArgumentException( "query is null" );
+		}
+		if ( maxResults < 0 ) {
+			throw new IllegalArgumentException( "maxResults < 0: " + maxResults );
+		}
+		byte[] q = query.getBytes( StandardCharsets.UTF_8 );
+		int qlen = q.length;
+		if ( ignoreCase ) {
+			for ( int i=0; i < qlen; ++i ) {
+				q[i] = (byte) TrigramIndex.fold( q[i] );
+			}
+		}
+		int[] qbuckets = new int [ Math.max( 0, qlen - 2 ) ];
+		int nq = 0;
+		for ( int i=2; i < qlen; ++i ) {
+			int g = ( TrigramIndex.fold( q[i-2] ) << 16 ) | ( TrigramIndex.fold( q[i-1] ) << 8 ) | TrigramIndex.fold( q[i] );
+			qbuckets[nq++] = TrigramIndex.bucket( g );
+		}
+		long[] results = new long [ Math.min( maxResults, lines ) ];
+		int nresults   = 0;
+		int[] cands    = new int [ blockLines ];
+		byte[] line    = new byte [ scratch.length ];
+		for ( int bi=blocks.size()-1; bi >= 0 && nresults < results.length; --bi ) {
+			Block blk = blocks.get( bi );
+			int ncands;
+			if ( blk.index != null && nq > 0 ) {
+				ncands = blk.index.candidates( qbuckets, nq, cands );
+			}
+			else {
+				for ( int i=0; i < blk.lines; ++i ) cands[i] = i;
+				ncands = blk.lines;
+			}
+			for ( int k=ncands-1; k >= 0 && nresults < results.length; --k ) {
+				int i 	 = cands[k];
+				int pos  = blk.offs[i];
+				byte[] data = blk.heap;
+				if ( data == null ) {
+					blk.offHeap.get( pos, line, 0, blk.offs[i+1] - pos );
+					data = line;
+					pos  = 0;
+				}
+				if ( contains( data, textStart( data, pos ), textLength( data, pos ), q, ignoreCase ) ) {
+					results[ nresults++ ] = blk.first + i;
+				}
+			}
+		}
+		long[] found = new long [ nresults ];
+		System.arraycopy( results, 0, found, 0, nresults );
+		return found;
+	}
+
+	private static boolean contains( byte[] text, int from, int len, byte[] q, boolean ignoreCase ) {
+		int last = from + len - q.length;
+		for ( int i=from; i <= last; ++i ) {
+			int j = 0;
+			if ( ignoreCase ) {
+				while ( j < q.length && TrigramIndex.fold( text[ i + j ] ) == ( q[j] & 255 ) ) ++j;
+			}
+			else {
+				while ( j < q.length && text[ i + j ] == q[j] ) ++j;
+			}
+			if ( j == q.length ) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns views of all blocks, newest first, which stay valid after
+	 * this Scrollback changes.
+	 */
+	Segment[] segments() {
+		int n = blocks.size();
+		Segment[] segs = new Segment [n];
+		for ( int i=0; i < n; ++i ) {
+			Block blk = blocks.get( n - 1 - i );
+			Segment seg = new Segment();
+			seg.first = blk.first;
+			seg.lines = blk.lines;
+			seg.maxLineBytes = scratch.length;
+			if ( blk.heap != null ) {
+				// the block is still being filled, and its array gets reused
+				seg.offs = new int [ blk.lines + 1 ];
+				System.arraycopy( blk.offs, 0, seg.offs, 0, blk.lines + 1 );
+				seg.heap = new byte [ blk.offs[ blk.lines ] ];
+				System.arraycopy( blk.heap, 0, seg.heap, 0, seg.heap.length );
+			}
+			else {
+				seg.offs 	= blk.offs;
+				seg.offHeap = blk.offHeap.duplicate();
+			}
+			segs[i] = seg;
+		}
+		return segs;
+	}
+
+	/**
+	 * Returns the age of the line with the given number, or -1 if it is no
+	 * longer held.
+	 */
+	public int ageOf( long line ) {
+		if ( blocks.isEmpty() || line < blocks.get( 0 ).first || line >= next ) return -1;
+		return (int)( next - 1 - line );
+	}
+
+	/**
+	 * Returns the number of lines held.
+	 */
+	public int size() {
+		return lines;
+	}
+
+	public int getMaxLines() {
+		return maxLines;
+	}
+
+	/**
+	 * Returns the number of bytes the held lines take up in encoded form,
+	 * including four bytes per line for its offset.
+	 */
+	public long getEncodedBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of encoded bytes that live in off-heap memory.
+	 */
+	public long getOffHeapBytes() {
+		return offHeapBytes;
+	}
+
+	/**
+	 * Drops all lines. The off-heap blocks are released to the garbage
+	 * collector.
+	 */
+	public void clear() {
+		if ( !blocks.isEmpty() ) {
+			Block blk = blocks.get( blocks.size() - 1 );
+			if ( blk.heap != null ) spareHeap = blk.heap;
+		}
+		blocks.clear();
+		lines = 0;
+		bytes = 0;
+		offHeapBytes = 0;
+	}
+
+}
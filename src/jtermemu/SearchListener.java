@@ -0,0 +1,47 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+package jtermemu;
+
+/**
+ * Receives the results of a RegexSearch as they become available.
+ *
+ * Methods are called from the search threads, one call at a time; they
+ * should hand the results over (e.g. with SwingUtilities.invokeLater)
+ * rather than do much work themselves.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+public interface SearchListener {
+
+	/**
+	 * Reports matching scrollback lines lines[0..count), by line number,
+	 * newest first. Later calls always report older lines.
+	 */
+	void found( long[] lines, int count );
+
+	/**
+	 * Called once at the end, unless the search was cancelled.
+	 */
+	void finished();
+
+}
@@ -33,12 +33,15 @@ public class ShellBinding {
 	private InputThread stdOutCapture = null;
 	private InputThread stdErrCapture = null;
 	private OutputThread stdInFeeder = null;
+	private ModelThread model = null;
 	private TextScreen textScr = null;
 	private JFrame frame = null;
+	private RenderThread renderer = null;
 
-	ShellBinding( TextScreen textScr_, JFrame frame_ ) {
+	ShellBinding( TextScreen textScr_, JFrame frame_, RenderThread renderer_ ) {
 		textScr = textScr_;
 		frame = frame_;
+		renderer = renderer_;
 		init();
 	}
 	
@@ -63,10 +66,12 @@ public class ShellBinding {
 				e.printStackTrace();
 				System.exit( 1 );
 			}
-			stdOutCapture = new InputThread( shellProc.getInputStream(), textScr );
-			stdErrCapture = new InputThread( shellProc.getErrorStream(), textScr );
+			model 		  = new ModelThread( textScr, 2 );
+			stdOutCapture = new InputThread( shellProc.getInputStream(), model.getRing( 0 ) );
+			stdErrCapture = new InputThread( shellProc.getErrorStream(), model.getRing( 1 ) );
 			stdInFeeder   = new OutputThread( shellProc.getOutputStream() );
 
+			model.start();
 			stdOutCapture.start();
 			stdErrCapture.start();
 			stdInFeeder.start();
@@ -106,6 +111,7 @@ public class ShellBinding {
 					else {
 						return;
 					}
+					textScr.resetView();
 					stdInFeeder.enterInput( bytes );
 				}
 				public void keyPressed( KeyEvent e ) {
@@ -156,9 +162,17 @@ public class ShellBinding {
 						bytes = "\u001b[4~".getBytes();
 						break;
 					case KeyEvent.VK_PAGE_UP:
+						if ( e.isShiftDown() ) {	// scroll back half a page
+							textScr.scrollView( textScr.getRows() / 2 );
+							return;
+						}
 						bytes = "\u001b[5~".getBytes();
 						break;
 					case KeyEvent.VK_PAGE_DOWN:
+						if ( e.isShiftDown() ) {	// scroll forward half a page
+							textScr.scrollView( -( textScr.getRows() / 2 ) );
+							return;
+						}
 						bytes = "\u001b[6~".getBytes();
 						break;
 					case KeyEvent.VK_INSERT:
@@ -229,6 +243,7 @@ public class ShellBinding {
 						break;
 					}
 					if ( bytes != null ) {
+						textScr.resetView();
 						stdInFeeder.enterInput( bytes );
 					}
 				}
@@ -248,6 +263,12 @@ public class ShellBinding {
 
 	private void onShellExit() {
 		System.out.println( "Shell exited" );
+		if ( model != null ) {
+			System.out.println( model.getStatistics() );
+		}
+		if ( renderer != null ) {
+			System.out.println( renderer.getStatistics() );
+		}
 		shellProc = null;
 		System.exit( 0 );
 	}
@@ -0,0 +1,344 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+package jtermemu;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Intern table for cell styles.
+ * 
+ * A style is the foreground and background color, the Attributes flags,
+ * the underline color and the hyperlink of a cell. Cells only store the
+ * small integer id the table hands out for their style (0..MAX_STYLES-1),
+ * so a richer style costs nothing per cell. Colors are either a palette
+ * index, COLOR_XTERM | n for entry n of the xterm 256 color palette, or
+ * COLOR_RGB | 0xRRGGBB.
+ * 
+ * Ids are never freed on their own. When the table has grown past its
+ * sweep threshold, the owner runs a mark-and-sweep pass: beginSweep(),
+ * mark() every id that is still referenced, endSweep(). That frees all
+ * unmarked ids for reuse, together with hyperlinks no live style refers
+ * to, and raises the epoch, so anybody caching ids knows to drop them.
+ * Id 0 is the style the table was created with and is never freed.
+ * 
+ * Hyperlinks count the live styles that refer to them. Besides the
+ * sweep, releaseLink() frees a link that no style took up, so a stream
+ * of links that never reach a cell does not grow the table; freed link
+ * ids are kept on a stack for reuse.
+ * 
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class StyleTable {
+
+	public static final int 	COLOR_RGB 		= 1 << 24;
+	public static final int 	COLOR_XTERM 	= 1 << 25;
+	public static final int 	NO_COLOR 		= -1;		// underline in the foreground color
+	public static final int 	MAX_STYLES 		= 65536;
+	private static final int 	MIN_SWEEP_AT 	= 1024;
+
+	private int[] 		fg;
+	private int[] 		bg;
+	private int[] 		attr;
+	private int[] 		ul;
+	private int[] 		link;
+	private int[] 		nextFree;		// 0 for a live id, else the next free id + 2
+	private boolean[] 	marks;
+	private int[] 		slots;			// open addressing: id + 1, or 0 if empty
+	private int 		top 	 = 0;	// ids below top have been handed out
+	private int 		live 	 = 0;
+	private int 		freeList = -1;
+	private int 		sweepAt  = MIN_SWEEP_AT;
+	private int 		epoch 	 = 0;
+	private int 		version  = 0;
+
+	private HashMap<String,Integer> linkIds = new HashMap<String,Integer>();
+	private String[] 	links = new String [ 16 ];	// link 0 is "no hyperlink"
+	private int[] 		linkUsers = new int [ 16 ];	// live styles referring to each link
+	private int[] 		freeLinks = new int [ 16 ];	// stack of free link ids
+	private int 		freeLinkCount = 0;
+	private int 		linkTop = 1;
+
+	/**
+	 * Creates a table whose style 0 has the given colors and no
+	 * attributes.
+	 */
+	public StyleTable( int fg_, int bg_ ) {
+		grow( 256 );
+		intern( fg_, bg_, 0, NO_COLOR, 0 );
+	}
+
+	/**
+	 * Creates an empty table to receive copies (see copyTo()).
+	 */
+	StyleTable() {
+		grow( 256 );
+	}
+
+	private void grow( int capacity ) {
+		int old = fg == null ? 0 : fg.length;
+		fg 		 = Arrays.copyOf( fg == null ? new int [0] : fg, capacity );
+		bg 		 = Arrays.copyOf( bg == null ? new int [0] : bg, capacity );
+		attr 	 = Arrays.copyOf( attr == null ? new int [0] : attr, capacity );
+		ul 		 = Arrays.copyOf( ul == null ? new int [0] : ul, capacity );
+		link 	 = Arrays.copyOf( link == null ? new int [0] : link, capacity );
+		nextFree = Arrays.copyOf( nextFree == null ? new int [0] : nextFree, capacity );
+		marks 	 = new boolean [ capacity ];
+		if ( old < capacity ) {
+			rehash();
+		}
+	}
+
+	private static int hash( int fg, int bg, int attr, int ul, int link ) {
+		int h = fg;
+		h = h * 31 + bg;
+		h = h * 31 + attr;
+		h = h * 31 + ul;
+		h = h * 31 + link;
+		return h * 0x9e3779b1;
+	}
+
+	private void rehash() {
+		slots = new int [ fg.length * 2 ];
+		for ( int id=0; id < top; ++id ) {
+			if ( nextFree[id] == 0 ) {
+				insert( id );
+			}
+		}
+	}
+
+	private void insert( int id ) {
+		int mask = slots.length - 1;
+		int s = ( hash( fg[id], bg[id], attr[id], ul[id], link[id] ) >>> 8 ) & mask;
+		while ( slots[s] != 0 ) s = ( s + 1 ) & mask;
+		slots[s] = id + 1;
+	}
+
+	/**
+	 * Returns the id of the given style, adding it if necessary, or -1 if
+	 * the table is full.
+	 */
+	public int intern( int fg_, int bg_, int attr_, int ul_, int link_ ) {
+		int mask = slots.length - 1;
+		int s = ( hash( fg_, bg_, attr_, ul_, link_ ) >>> 8 ) & mask;
+		for ( int e; ( e = slots[s] ) != 0; s = ( s + 1 ) & mask ) {
+			int id = e - 1;
+			if ( fg[id] == fg_ && bg[id] == bg_ && attr[id] == attr_ && ul[id] == ul_ && link[id] == link_ ) {
+				return id;
+			}
+		}
+		int id;
+		if ( freeList >= 0 ) {
+			id = freeList;
+			freeList = nextFree[id] - 2;
+		}
+		else if ( top < MAX_STYLES ) {
+			if ( top == fg.length ) {
+				grow( fg.length * 2 );
+			}
+			id = top++;
+		}
+		else {
+			return -1;
+		}
+		fg[id] 		 = fg_;
+		bg[id] 		 = bg_;
+		attr[id] 	 = attr_;
+		ul[id] 		 = ul_;
+		link[id] 	 = link_;
+		nextFree[id] = 0;
+		++linkUsers[ link_ ];
+		++live;
+		++version;
+		insert( id );
+		return id;
+	}
+
+	/**
+	 * Returns the id of style id with its attributes replaced by attr_.
+	 */
+	public int withAttributes( int id, int attr_ ) {
+		return intern( fg[id], bg[id], attr_, ul[id], link[id] );
+	}
+
+	public int getForeground( int id ) {
+		return fg[id];
+	}
+
+	public int getBackground( int id ) {
+		return bg[id];
+	}
+
+	public int getAttributes( int id ) {
+		return attr[id];
+	}
+
+	public int getUnderlineColor( int id ) {
+		return ul[id];
+	}
+
+	public int getLink( int id ) {
+		return link[id];
+	}
+
+	/**
+	 * Returns the id of the hyperlink uri, adding it if necessary; null
+	 * yields 0, "no hyperlink".
+	 */
+	public int internLink( String uri ) {
+		if ( uri == null ) return 0;
+		Integer id = linkIds.get( uri );
+		if ( id != null ) return id;
+		int n;
+		if ( freeLinkCount > 0 ) {
+			n = freeLinks[ --freeLinkCount ];
+		}
+		else {
+			n = linkTop++;
+			if ( n == links.length ) {
+				links 	  = Arrays.copyOf( links, n * 2 );
+				linkUsers = Arrays.copyOf( linkUsers, n * 2 );
+				freeLinks = Arrays.copyOf( freeLinks, n * 2 );
+			}
+		}
+		links[n] 	 = uri;
+		linkUsers[n] = 0;
+		linkIds.put( uri, n );
+		return n;
+	}
+
+	/**
+	 * Frees hyperlink id unless a style refers to it. The owner calls this
+	 * when it stops using an id it got from internLink(), so that links
+	 * which never made it into a style do not pile up until the next sweep.
+	 */
+	public void releaseLink( int id ) {
+		if ( id != 0 && links[id] != null && linkUsers[id] == 0 ) {
+			freeLink( id );
+		}
+	}
+
+	private void freeLink( int n ) {
+		linkIds.remove( links[n] );
+		links[n] = null;
+		freeLinks[ freeLinkCount++ ] = n;
+	}
+
+	/**
+	 * Returns the URI of hyperlink id, or null for 0.
+	 */
+	public String getLinkURI( int id ) {
+		return links[id];
+	}
+
+	/**
+	 * Returns the number of styles in use.
+	 */
+	public int size() {
+		return live;
+	}
+
+	/**
+	 * Returns a counter that is raised by every sweep. Ids obtained in an
+	 * earlier epoch may since have been freed and reused.
+	 */
+	public int getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Tells whether the table has grown enough to be worth sweeping.
+	 */
+	public boolean needsSweep() {
+		return live >= sweepAt;
+	}
+
+	public void beginSweep() {
+		Arrays.fill( marks, 0, top, false );
+		marks[0] = true;
+	}
+
+	public void mark( int id ) {
+		marks[id] = true;
+	}
+
+	public void mark( char[] ids, int from, int to ) {
+		for ( int i=from; i < to; ++i ) {
+			marks[ ids[i] ] = true;
+		}
+	}
+
+	/**
+	 * Frees every style that was not marked since beginSweep(), and every
+	 * hyperlink that no remaining style refers to. Returns the number of
+	 * styles freed.
+	 */
+	public int endSweep() {
+		int freed = 0;
+		for ( int id=top-1; id >= 0; --id ) {
+			if ( nextFree[id] != 0 || marks[id] ) continue;
+			nextFree[id] = freeList + 2;
+			freeList = id;
+			--linkUsers[ link[id] ];
+			++freed;
+		}
+		for ( int n=1; n < linkTop; ++n ) {
+			if ( links[n] != null && linkUsers[n] == 0 ) {
+				freeLink( n );
+			}
+		}
+		live -= freed;
+		sweepAt = Math.min( MAX_STYLES, Math.max( MIN_SWEEP_AT, live * 2 ) );
+		++epoch;
+		++version;
+		rehash();
+		return freed;
+	}
+
+	/**
+	 * Makes dst an exact copy of this table, unless it already is one.
+	 */
+	public void copyTo( StyleTable dst ) {
+		if ( dst.version == version && dst.epoch == epoch && dst.top == top ) return;
+		if ( dst.fg.length < fg.length ) {
+			dst.fg 	 = new int [ fg.length ];
+			dst.bg 	 = new int [ fg.length ];
+			dst.attr = new int [ fg.length ];
+			dst.ul 	 = new int [ fg.length ];
+			dst.link = new int [ fg.length ];
+		}
+		System.arraycopy( fg, 0, dst.fg, 0, top );
+		System.arraycopy( bg, 0, dst.bg, 0, top );
+		System.arraycopy( attr, 0, dst.attr, 0, top );
+		System.arraycopy( ul, 0, dst.ul, 0, top );
+		System.arraycopy( link, 0, dst.link, 0, top );
+		if ( dst.links.length < links.length ) {
+			dst.links = new String [ links.length ];
+		}
+		System.arraycopy( links, 0, dst.links, 0, linkTop );
+		dst.top 	= top;
+		dst.version = version;
+		dst.epoch 	= epoch;
+	}
+
+}
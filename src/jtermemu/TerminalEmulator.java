@@ -24,16 +24,16 @@ package jtermemu;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Graphics;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 
 import javax.swing.JFrame;
-import javax.swing.Timer;
 
 public class TerminalEmulator extends Component {
 	
 	private static final long serialVersionUID = 1L;
-	private Timer timer;
+	private RenderThread renderer;
 	private GraphicsScreen gfxScr = null;
 	private ShellBinding shell = null;
 	private JFrame frame = null;
@@ -47,26 +47,31 @@ public class TerminalEmulator extends Component {
 		
 		gfxScr = new GraphicsScreen( frame );
 		
-		ActionListener timerListener = new ActionListener() {
-		      public void actionPerformed( ActionEvent evt ) {
-		          doTimer();
-		      } 
-		};
+		// frames run on the render thread when the screen changed, a blink is due or the window was resized
+		renderer = new RenderThread( this::doFrame );
+		gfxScr.getTextScreen().setChangeListener( renderer::request );
+		addComponentListener( new ComponentAdapter() {
+			public void componentResized( ComponentEvent evt ) {
+				renderer.request();
+			}
+		} );
 		
-		timer = new Timer( 1000/60, timerListener );
-		timer.start();
-		
-		shell = new ShellBinding( gfxScr.getTextScreen(), frame );
+		shell = new ShellBinding( gfxScr.getTextScreen(), frame, renderer );
+		renderer.start();
+		renderer.request();
 	}
 
-	private void doTimer() {
+	private long doFrame() {
 		// check if there's a size change
 		Dimension size = getSize();
-		gfxScr.update( size );
-		// trigger redraw
-		repaint();
+		Rectangle r = gfxScr.update( size );
+		// trigger redraw of what changed; repaint() may be called from any thread
+		if ( r != null ) {
+			repaint( r.x, r.y, r.width, r.height );
+		}
 		// run shell periodicals
 		shell.periodicals();
+		return gfxScr.getBlinkDelay();
 	}
 	
 	public void paint( Graphics g ) {
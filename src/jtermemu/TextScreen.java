@@ -21,39 +21,66 @@
 
 package jtermemu;
 
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.concurrent.Semaphore;
 
 import javax.swing.JFrame;
 
 public class TextScreen {
 
+	/** Cursor shapes, see getSnapshotCursor(). */
+	public static final int CURSOR_BLOCK = 0;
+	public static final int CURSOR_UNDERLINE = 1;
+	public static final int CURSOR_BAR = 2;
+	/** getSnapshotCursor(): the cursor blinks. */
+	public static final int CURSOR_BLINKING = 1 << 26;
+
 	private int width = 80;
 	private int height = 25;
 	private int cursX = 0;
 	private int cursY = 0;
 	private int colorF = 0, colorB = 0;
+	private int colorU = StyleTable.NO_COLOR;
 	private int userA = 0;
-	private boolean escape = false;
-	private boolean osc = false;
-	private boolean csi = false;
-	private boolean utf8 = false;
-	private int utf8_remain = 0;
-	private int utf8_cp = 0;
-	private String oscSeq, csiSeq;
+	private int linkId = 0;
+	private StyleTable styleTable = null;
+	private char penStyle = 0;
+	private boolean penDirty = true;
+	private Utf8Decoder decoder = null;
+	private VtParser parser = null;
+	private int[] cpBuf = null;
+	private OscRegistry oscRegistry = null;
 	private JFrame frame;
-	private Semaphore writeSem = null;
-	private int cursorVisibleNest = 0;
-	private int cursorBlinkNest = 1;
+	private Semaphore modelSem = null;	// held by the model thread per batch, by the renderer per snapshot
+	private boolean cursorVisible = true;
+	private boolean cursorBlink = true;
+	private int cursorShape = CURSOR_BLOCK;
+	private int snapCursor = -1;		// cursor as of the last snapshot, see getSnapshotCursor()
+	private volatile Runnable changeListener = null;
 	private int saveCursX = 0, saveCursY = 0;
-	private boolean bracketedPasteMode = false;
+	private volatile boolean bracketedPasteMode = false;
 	private boolean onAlternateScreen = false;
-	private boolean applicationCursorKeys = false;
+	private volatile boolean applicationCursorKeys = false;
+	private boolean jumpScroll = true;
 	private int scrollTop = 1;
 	private int scrollBottom = 25;
+	private int[] paletteRGB = null;
+	private int defaultFgRGB = -1, defaultBgRGB = -1;
+	private int colorChanges = 0;		// counts changes by OSC 4/10/11, see getSnapshotColorChanges()
+	private int snapColorChanges = 0;
+	private String hyperlink = null;
+	private int semanticMark = 0;
+	private int lastExitStatus = 0;
+	
 	
-	public static final int FGCOL_SHIFT = 8;
-	public static final int BGCOL_SHIFT = 12;
-	public static final int ATTR_SHIFT  = 16;
+	private static final int CPBUF_SIZE = 1024;
+	private static final int NO_COLOR_ARGS = -2;	// colorArgs(): no valid color selection
 
 	private static final byte[] color16plus = {
 			(byte) 1, (byte) 2, (byte) 2, (byte) 2, (byte) 10, (byte) 10, (byte) 3,
@@ -94,20 +121,42 @@ public class TextScreen {
 	};
 	
 	/**
-	 * Text screen buffer.
-	 * Each cell contains the following fields:
-	 * 
-	 * 	<attr.15> <bgCol.4> <fgCol.4> <char.8>
+	 * Text screen buffer, as two parallel arrays: the Unicode code point of
+	 * each cell, and the id of its style in styleTable.
 	 */
-	private int[] buffer = null; 
+	private int[] chars = null; 
+	private char[] styles = null; 
 
 	/**
-	 * Alternate text screen buffer.
-	 * Each cell contains the following fields:
-	 * 
-	 * 	<attr.15> <bgCol.4> <fgCol.4> <char.8>
+	 * Alternate text screen buffer, laid out like chars / styles.
+	 */
+	private int[] altChars = null; 
+	private char[] altStyles = null; 
+
+	/**
+	 * Row pointer tables: row y of the screen is stored at
+	 * chars / styles[ rowMap[y] * width ]. Scrolling rotates entries of the
+	 * table instead of moving cells.
+	 */
+	private int[] rowMap = null;
+	private int[] altRowMap = null;
+	private int[] rowTemp = null;
+
+	/**
+	 * Lines scrolled off the top of the main screen, and how many lines
+	 * the viewport is scrolled back into them (0 = live screen).
 	 */
-	private int[] altBuffer = null; 
+	private Scrollback scrollback = null;
+	private int viewOffset = 0;
+
+	/**
+	 * Damage since the renderer last fetched the screen, in viewport rows:
+	 * one bit per row in dirtyRows, and the changed columns
+	 * [dirtyFrom, dirtyTo) of each dirty row.
+	 */
+	private long[] dirtyRows = null;
+	private int[] dirtyFrom = null;
+	private int[] dirtyTo = null;
 
 	TextScreen( JFrame frame_ ) {
 		frame = frame_;
@@ -160,63 +209,326 @@ public class TextScreen {
 	*/
 	
 	private void switchScreen() {
-		hideCursor();
-		int[] temp = buffer; buffer = altBuffer; altBuffer = temp;
-		showCursor();
+		int[] temp = chars; chars = altChars; altChars = temp;
+		char[] temp2 = styles; styles = altStyles; altStyles = temp2;
+		temp = rowMap; rowMap = altRowMap; altRowMap = temp;
+		damageAll();
 	}
 	
 	private void init() {
-		buffer = new int [ width * height ];
-		altBuffer = new int [ width * height ];
-		oscSeq = new String();
-		csiSeq = new String();
-		writeSem = new Semaphore( 1, true );
+		chars = new int [ width * height ];
+		styles = new char [ width * height ];
+		altChars = new int [ width * height ];
+		altStyles = new char [ width * height ];
+		styleTable = new StyleTable( 1, 0 );
+		rowMap = new int [ height ];
+		altRowMap = new int [ height ];
+		rowTemp = new int [ height ];
+		dirtyRows = new long [ ( height + 63 ) / 64 ];
+		dirtyFrom = new int [ height ];
+		dirtyTo = new int [ height ];
+		scrollback = new Scrollback( styleTable, width, 
+				Integer.getInteger( "jtermemu.scrollback.lines", Scrollback.DEFAULT_MAX_LINES ), 
+				Long.getLong( "jtermemu.scrollback.bytes", Scrollback.DEFAULT_MAX_BYTES ) );
+		for ( int y=0; y < height; ++y ) {
+			rowMap[y] = altRowMap[y] = y;
+		}
+		decoder = new Utf8Decoder();
+		parser = new VtParser( this );
+		cpBuf = new int [ CPBUF_SIZE + 1 ];
+		paletteRGB = new int [256];
+		Arrays.fill( paletteRGB, -1 );
+		oscRegistry = new OscRegistry();
+		oscRegistry.register(   0, this::oscTitle );
+		oscRegistry.register(   1, this::oscTitle );
+		oscRegistry.register(   2, this::oscTitle );
+		oscRegistry.register(   4, this::oscPalette );
+		oscRegistry.register(  10, this::oscDefaultColors );
+		oscRegistry.register(  11, this::oscDefaultColors );
+		oscRegistry.register(   8, this::oscHyperlink );
+		if ( Boolean.getBoolean( "jtermemu.osc52" ) ) {	// off by default: any program output could replace the clipboard
+			oscRegistry.register(  52, this::oscClipboard );
+		}
+		oscRegistry.register( 133, this::oscSemanticMark );
+		modelSem = new Semaphore( 1 );
 		cls( 1, 0 );
 		switchScreen();
 		cls( 1, 0 );
 		switchScreen();
-		showCursor();
 	}
 	
+	private int rowOffs( int y ) {
+		return rowMap[y] * width;
+	}
+
+	/**
+	 * Marks columns [x0, x1) of screen row y as changed.
+	 */
+	private void damage( int y, int x0, int x1 ) {
+		y += viewOffset;
+		if ( y >= height ) return;
+		if ( x0 < dirtyFrom[y] ) dirtyFrom[y] = x0;
+		if ( x1 > dirtyTo[y] ) dirtyTo[y] = x1;
+		dirtyRows[ y >> 6 ] |= 1L << y;
+	}
+
+	/**
+	 * Marks screen rows [yFrom, yTo) as changed.
+	 */
+	private void damageRows( int yFrom, int yTo ) {
+		yFrom += viewOffset;
+		yTo   += viewOffset;
+		if ( yTo > height ) yTo = height;
+		for ( int y=yFrom; y < yTo; ++y ) {
+			dirtyFrom[y] = 0;
+			dirtyTo[y]   = width;
+			dirtyRows[ y >> 6 ] |= 1L << y;
+		}
+	}
+
+	/**
+	 * Marks the whole viewport as changed.
+	 */
+	private void damageAll() {
+		Arrays.fill( dirtyFrom, 0 );
+		Arrays.fill( dirtyTo, width );
+		Arrays.fill( dirtyRows, -1L );
+	}
+
 	private void color( int fgcol, int bgcol ) {
-		colorF = fgcol & 15;
-		colorB = bgcol & 15;
+		colorF = fgcol;
+		colorB = bgcol;
+		penDirty = true;
 	}
 	
 	private void attrib( int a ) {
 		userA = a & 32767;
+		penDirty = true;
+	}
+
+	/**
+	 * Returns the style id for the current colors, attributes and
+	 * hyperlink, sweeping unused styles out of the table first when it has
+	 * grown enough. Falls back to style 0 if the table is full.
+	 */
+	private char pen() {
+		if ( penDirty ) {
+			if ( styleTable.needsSweep() ) {
+				sweepStyles();	// may move the hyperlink to another linkId
+			}
+			int id = styleTable.intern( colorF, colorB, userA, colorU, linkId );
+			penStyle = (char)( id >= 0 ? id : 0 );
+			penDirty = false;
+		}
+		return penStyle;
+	}
+
+	/**
+	 * Frees the styles no cell on either screen uses any more. The
+	 * scrollback keeps its own copies of the styles of its lines.
+	 */
+	private void sweepStyles() {
+		styleTable.beginSweep();
+		styleTable.mark( styles, 0, styles.length );
+		styleTable.mark( altStyles, 0, altStyles.length );
+		if ( !penDirty ) {
+			styleTable.mark( penStyle );
+		}
+		styleTable.endSweep();
+		linkId = styleTable.internLink( hyperlink );
+		damageAll();	// history rows in the viewport may use freed ids
 	}
 	
 	private void cls( int fgcol, int bgcol ) {
-		hideCursor();
 		color( fgcol, bgcol ); attrib( 0 );
-		int v = ( userA << ATTR_SHIFT ) | ( colorB << BGCOL_SHIFT ) | ( colorF << FGCOL_SHIFT ) | 0x20;
-		int bufsiz = width * height;
-		for ( int i=0; i < bufsiz; ++i ) buffer[i] = v;
-		showCursor();
+		char v = pen();
+		Arrays.fill( chars, 0x20 );
+		Arrays.fill( styles, v );
+		damageAll();
 	}
 	
 	private void gotoxy( int x, int y ) {
-		hideCursor();
 		cursX = x;
 		cursY = y;
 		if ( cursX < 0 ) cursX = 0; else if ( cursX >= width  ) cursX = width -1;
 		if ( cursY < 0 ) cursY = 0; else if ( cursY >= height ) cursY = height-1;
-		showCursor();
 	}
 	
-	private void handleOsc() {
-		int pos = oscSeq.indexOf( ';' );
+	void handleOsc( OscBuffer buf ) {
+		oscRegistry.dispatch( buf );
+	}
+	
+	private void oscTitle( int selector, OscBuffer buf, int from, int to ) {
+		// 0: window title + icon name, 1: icon name, 2: window title
+		if ( selector != 1 && frame != null ) {
+			frame.setTitle( buf.toString( from, to ) );
+		}
+	}
+	
+	private static int hexDigit( int c ) {
+		if ( c >= '0' && c <= '9' ) return c - '0';
+		if ( c >= 'a' && c <= 'f' ) return c - 'a' + 10;
+		if ( c >= 'A' && c <= 'F' ) return c - 'A' + 10;
+		return -1;
+	}
+	
+	/**
+	 * Parses an X11 color specification ("rgb:r/g/b" with 1 to 4 hex digits
+	 * per component, or "#rgb" / "#rrggbb") into 0xRRGGBB. Returns -1 if the
+	 * specification is not understood (including "?" queries).
+	 */
+	private static int parseColorSpec( OscBuffer buf, int from, int to ) {
+		if ( from >= to ) return -1;
+		int rgb = 0;
+		if ( to - from > 4 && buf.equals( from, from + 4, "rgb:" ) ) {
+			int pos = from + 4;
+			for ( int n=0; n < 3; ++n ) {
+				int v = 0, digits = 0;
+				while ( pos < to && buf.byteAt( pos ) != '/' ) {
+					int d = hexDigit( buf.byteAt( pos++ ) );
+					if ( d < 0 || ++digits > 4 ) return -1;
+					v = ( v << 4 ) | d;
+				}
+				if ( digits == 0 ) return -1;
+				// scale to 8 bits
+				v = v * 255 / ( ( 1 << ( 4 * digits ) ) - 1 );
+				rgb = ( rgb << 8 ) | v;
+				++pos;	// skip '/'
+			}
+			return pos == to + 1 ? rgb : -1;
+		}
+		if ( ( to - from == 4 || to - from == 7 ) && buf.byteAt( from ) == '#' ) {
+			int digits = ( to - from - 1 ) / 3;
+			for ( int i=from+1; i < to; i += digits ) {
+				int v = 0;
+				for ( int k=0; k < digits; ++k ) {
+					int d = hexDigit( buf.byteAt( i + k ) );
+					if ( d < 0 ) return -1;
+					v = ( v << 4 ) | d;
+				}
+				rgb = ( rgb << 8 ) | ( digits == 1 ? v * 17 : v );
+			}
+			return rgb;
+		}
+		return -1;
+	}
+	
+	private void oscPalette( int selector, OscBuffer buf, int from, int to ) {
+		// index;spec[;index;spec...]
+		while ( from < to ) {
+			int pos1 = buf.indexOf( ';', from, to );
+			if ( pos1 < 0 ) return;
+			int pos2 = buf.indexOf( ';', pos1 + 1, to );
+			if ( pos2 < 0 ) pos2 = to;
+			int index = buf.parseInt( from, pos1 );
+			int rgb   = parseColorSpec( buf, pos1 + 1, pos2 );
+			if ( index >= 0 && index < paletteRGB.length && rgb >= 0 && paletteRGB[ index ] != rgb ) {
+				paletteRGB[ index ] = rgb;
+				colorsChanged();
+			}
+			from = pos2 + 1;
+		}
+	}
+	
+	private void oscDefaultColors( int selector, OscBuffer buf, int from, int to ) {
+		// each further ';' separated spec sets the next dynamic color
+		while ( from < to ) {
+			int pos = buf.indexOf( ';', from, to );
+			if ( pos < 0 ) pos = to;
+			int rgb = parseColorSpec( buf, from, pos );
+			if ( selector == 10 && rgb >= 0 && rgb != defaultFgRGB ) {
+				defaultFgRGB = rgb;
+				colorsChanged();
+			}
+			else if ( selector == 11 && rgb >= 0 && rgb != defaultBgRGB ) {
+				defaultBgRGB = rgb;
+				colorsChanged();
+			}
+			++selector;
+			from = pos + 1;
+		}
+	}
+	
+	private void colorsChanged() {
+		++colorChanges;
+		damageAll();	// makes the renderer take a snapshot and see the change
+	}
+	
+	private void oscHyperlink( int selector, OscBuffer buf, int from, int to ) {
+		// params;URI - an empty URI ends the link
+		int pos = buf.indexOf( ';', from, to );
 		if ( pos < 0 ) return;
-		String s1 = oscSeq.substring( 0, pos );
-		String s2 = oscSeq.substring( pos + 1 );
-		if ( s1.equals("0") ) {
-			// Set Window Title + Icon
-			frame.setTitle( s2 );			
+		int old   = linkId;
+		hyperlink = pos + 1 < to ? buf.toString( pos + 1, to ) : null;
+		linkId 	  = styleTable.internLink( hyperlink );
+		penDirty  = true;
+		if ( linkId != old ) {
+			styleTable.releaseLink( old );	// unless cells use it
+		}
+	}
+	
+	private void oscClipboard( int selector, OscBuffer buf, int from, int to ) {
+		// selection;base64 data - queries ("?") are not answered
+		int pos = buf.indexOf( ';', from, to );
+		if ( pos < 0 || buf.equals( pos + 1, to, "?" ) ) return;
+		String text;
+		try {
+			ByteBuffer bytes = Base64.getDecoder().decode( ByteBuffer.wrap( buf.getData(), pos + 1, to - pos - 1 ) );
+			text = StandardCharsets.UTF_8.decode( bytes ).toString();
+		}
+		catch ( IllegalArgumentException e ) {
+			System.out.println( "Invalid base64 data in OSC 52 sequence" );
+			return;
+		}
+		if ( GraphicsEnvironment.isHeadless() ) return;
+		try {
+			StringSelection sel = new StringSelection( text );
+			Toolkit.getDefaultToolkit().getSystemClipboard().setContents( sel, sel );
+		}
+		catch ( IllegalStateException e ) {
+			System.out.println( "Clipboard unavailable" );
 		}
 	}
 	
-	private int colorXlat( int isoNum ) {
+	private void oscSemanticMark( int selector, OscBuffer buf, int from, int to ) {
+		// A: prompt start, B: command start, C: command output start, D[;status]: command finished
+		if ( from >= to ) return;
+		semanticMark = buf.byteAt( from );
+		if ( semanticMark == 'D' && from + 2 < to ) {
+			int status = buf.parseInt( from + 2, to );
+			if ( status >= 0 ) lastExitStatus = status;
+		}
+	}
+	
+	void handleEsc( int intermediates, int c ) {
+		if ( intermediates != 0 ) {
+			// character set designations etc. are not supported
+			return;
+		}
+		switch ( c ) {
+		case '7':	// save cursor
+			saveCursX = cursX; saveCursY = cursY;
+			break;
+		case '8':	// restore cursor
+			cursX = saveCursX; cursY = saveCursY;
+			break;
+		case 'D':	// index
+			downLine();
+			break;
+		case 'E':	// next line
+			nextLine();
+			break;
+		case 'M':	// reverse index
+			upLine();
+			break;
+		}
+	}
+	
+	/**
+	 * Returns the renderer palette index closest to ISO / xterm color
+	 * number isoNum.
+	 */
+	static int colorXlat( int isoNum ) {
 		switch ( isoNum ) {
 		case 0:	// BLACK
 			return 1;
@@ -243,30 +555,104 @@ public class TextScreen {
 		}
 		return 0;
 	}
-	private void handleCsi( int c ) {
-		int[] args = new int [10];
-		int nargs = 0;
-		int oldpos = 0;
-		int len = csiSeq.length();
-		boolean DEC = false; // DEC terminal sequence
-		if ( len >= 1 && csiSeq.charAt(0) == '?' ) {
-			DEC = true; oldpos = 1;
-		}
-		while ( oldpos < len ) {
-			int pos = csiSeq.indexOf( ';', oldpos );
-			if ( pos < 0 ) pos = len;
-			if ( csiSeq.charAt(oldpos) >= '0' && csiSeq.charAt(oldpos) <= '9' ) {
-				args[nargs++] = Integer.valueOf( csiSeq.substring( oldpos, pos ) ).intValue();
+
+	/**
+	 * Returns the color selected by the parameters after args[i] in the
+	 * ';' separated form "5;index" or "2;r;g;b", or NO_COLOR_ARGS.
+	 */
+	private int colorArgs( int[] args, int i, int nargs ) {
+		if ( i + 2 < nargs && args[i+1] == 5 ) {
+			return xtermColor( args[i+2] );
+		}
+		if ( i + 4 < nargs && args[i+1] == 2 ) {
+			return rgbColor( args[i+2], args[i+3], args[i+4] );
+		}
+		return NO_COLOR_ARGS;
+	}
+
+	/**
+	 * Returns how many parameters after args[i] colorArgs() consumed.
+	 */
+	private int colorArgCount( int[] args, int i, int nargs ) {
+		if ( i + 2 < nargs && args[i+1] == 5 ) return 2;
+		if ( i + 4 < nargs && args[i+1] == 2 ) return 4;
+		return 0;
+	}
+
+	/**
+	 * Returns the color selected by the nsub sub-parameters of args[i] in
+	 * the ':' separated form "5:index", "2:r:g:b" or "2:colorspace:r:g:b",
+	 * or NO_COLOR_ARGS.
+	 */
+	private int colorSubArgs( int[] args, int i, int nsub ) {
+		if ( nsub >= 2 && args[i+1] == 5 ) {
+			return xtermColor( args[i+2] );
+		}
+		if ( nsub >= 5 && args[i+1] == 2 ) {
+			return rgbColor( args[i+3], args[i+4], args[i+5] );
+		}
+		if ( nsub == 4 && args[i+1] == 2 ) {
+			return rgbColor( args[i+2], args[i+3], args[i+4] );
+		}
+		return NO_COLOR_ARGS;
+	}
+
+	/**
+	 * Returns the style color for entry n of the xterm 256 color palette;
+	 * the renderer decides how exactly it can show it.
+	 */
+	private static int xtermColor( int n ) {
+		return n >= 0 && n < 256 ? StyleTable.COLOR_XTERM | n : colorXlat( n );
+	}
+
+	private static int rgbColor( int r, int g, int b ) {
+		return StyleTable.COLOR_RGB | ( ( r & 255 ) << 16 ) | ( ( g & 255 ) << 8 ) | ( b & 255 );
+	}
+	/**
+	 * Returns the number of parameters following parameter i that belong to
+	 * it as ':' separated sub-parameters.
+	 */
+	private static int subArgCount( int i, int nargs, int subArgs ) {
+		int n = 0;
+		while ( i + 1 + n < nargs && ( subArgs & ( 1 << ( i + 1 + n ) ) ) != 0 ) ++n;
+		return n;
+	}
+	
+	private static String csiToString( int c, int marker, int intermediates, int[] args, int nargs, int subArgs ) {
+		StringBuilder sb = new StringBuilder();
+		if ( marker != 0 ) sb.append( (char) marker );
+		for ( int i=0; i < nargs; ++i ) {
+			if ( i > 0 ) sb.append( ( subArgs & ( 1 << i ) ) != 0 ? ':' : ';' );
+			sb.append( args[i] );
+		}
+		if ( intermediates > 0xff ) sb.append( (char)( intermediates >> 8 ) );
+		if ( intermediates != 0 ) sb.append( (char)( intermediates & 0xff ) );
+		sb.append( (char) c );
+		return sb.toString();
+	}
+	
+	void handleCsi( int c, int marker, int intermediates, int[] args, int nargs, int subArgs ) {
+		boolean DEC = marker == '?'; // DEC terminal sequence
+		if ( c == 'q' && intermediates == ' ' && marker == 0 ) {	// DECSCUSR: set cursor style
+			int arg = nargs >= 1 ? args[0] : 0;
+			if ( arg <= 6 ) {
+				cursorBlink = arg <= 1 || ( arg & 1 ) != 0;
+				cursorShape = arg <= 2 ? CURSOR_BLOCK : arg <= 4 ? CURSOR_UNDERLINE : CURSOR_BAR;
 			}
-			oldpos = pos + 1;
+			return;
+		}
+		if ( intermediates != 0 || ( marker != 0 && !DEC ) ) {
+			System.out.printf( "Unsupported CSI sequence: %s\n", csiToString( c, marker, intermediates, args, nargs, subArgs ) );
+			return;
 		}
-		// System.out.printf( "CSI sequence: %s%c\n", csiSeq, (char) c );
+		// System.out.printf( "CSI sequence: %s\n", csiToString( c, marker, intermediates, args, nargs, subArgs ) );
 		if ( c == 'm' ) {
 			if ( nargs == 0 ) {	// normal
-				userA = 0; colorF = 1; colorB = 0;
+				userA = 0; colorF = 1; colorB = 0; colorU = StyleTable.NO_COLOR;
 			}
 			for ( int i=0; i < nargs; ++i ) {
-				int arg = args[i];
+				int arg  = args[i];
+				int nsub = subArgCount( i, nargs, subArgs );
 				if ( arg >= 30 && arg <= 37 ) {
 					colorF = colorXlat( arg - 30 );
 				}
@@ -282,7 +668,7 @@ public class TextScreen {
 				else {
 					switch ( arg ) {
 					case 0:	// NORMAL
-						userA = 0; colorF = 1; colorB = 0;
+						userA = 0; colorF = 1; colorB = 0; colorU = StyleTable.NO_COLOR;
 						break;
 					case 1: // BOLD / INTENSE
 						userA |= Attributes.ATTRF_BOLD;
@@ -290,8 +676,14 @@ public class TextScreen {
 					case 2: // THIN / DARK
 						userA |= Attributes.ATTRF_THIN;
 						break;						
-					case 4:	// UNDERLINED
-						userA |= Attributes.ATTRF_UNDERLINE;
+					case 4:	// UNDERLINED (4:0 none, 4:2 double, other styles single)
+						userA &= ~( Attributes.ATTRF_UNDERLINE | Attributes.ATTRF_DOUBLE_UNDERLINE );
+						if ( nsub == 0 || args[i+1] == 1 || args[i+1] > 2 ) {
+							userA |= Attributes.ATTRF_UNDERLINE;
+						}
+						else if ( args[i+1] == 2 ) {
+							userA |= Attributes.ATTRF_DOUBLE_UNDERLINE;
+						}
 						break;
 					case 21:	// DOUBLE UNDERLINED
 						userA |= Attributes.ATTRF_DOUBLE_UNDERLINE;
@@ -336,61 +728,86 @@ public class TextScreen {
 						userA &= ~Attributes.ATTRF_OVERLINE;
 						break;
 					case 38: 	// select foreground color
-						if ( i + 2 < nargs && args[i+1] == 5 ) {
-							colorF = colorXlat( args[i+2] );
-							i = nargs - 1;
+						if ( nsub == 0 ) {
+							int col = colorArgs( args, i, nargs );
+							if ( col != NO_COLOR_ARGS ) colorF = col;
+							i += colorArgCount( args, i, nargs );
+						}
+						else {
+							int col = colorSubArgs( args, i, nsub );
+							if ( col != NO_COLOR_ARGS ) colorF = col;
 						}
 						break;
 					case 39:	// default foreground color
 						colorF = 1;
 						break;
 					case 48:	// select background color
-						if ( i + 2 < nargs && args[i+1] == 5 ) {
-							colorB = colorXlat( args[i+2] );
-							i = nargs - 1;
+						if ( nsub == 0 ) {
+							int col = colorArgs( args, i, nargs );
+							if ( col != NO_COLOR_ARGS ) colorB = col;
+							i += colorArgCount( args, i, nargs );
+						}
+						else {
+							int col = colorSubArgs( args, i, nsub );
+							if ( col != NO_COLOR_ARGS ) colorB = col;
 						}
 						break;
 					case 49:	// default background color
 						colorB = 0;
 						break;
+					case 58:	// select underline color
+						if ( nsub == 0 ) {
+							int col = colorArgs( args, i, nargs );
+							if ( col != NO_COLOR_ARGS ) colorU = col;
+							i += colorArgCount( args, i, nargs );
+						}
+						else {
+							int col = colorSubArgs( args, i, nsub );
+							if ( col != NO_COLOR_ARGS ) colorU = col;
+						}
+						break;
+					case 59:	// default underline color
+						colorU = StyleTable.NO_COLOR;
+						break;
 					}
 				}
+				i += nsub;
 			}
+			penDirty = true;
 		}
 		else if ( c == 'K' && nargs == 0 ) {
 			// CSI K: erase to end of line
-			int v = ( userA << ATTR_SHIFT ) | ( colorB << BGCOL_SHIFT ) | ( colorF << FGCOL_SHIFT ) | 0x20;
-			for ( int i=cursX; i < width; ++i ) {
-				buffer[ cursY * width + i ] = v;
-			}
+			char v = pen();
+			blank( rowOffs( cursY ) + cursX, width - cursX, v );
+			damage( cursY, cursX, width );
 		}
 		else if ( c == 'J' ) {
 			int mode = 0;
 			if ( nargs == 1 ) mode = args[0]; 
-			int v = ( userA << ATTR_SHIFT ) | ( colorB << BGCOL_SHIFT ) | ( colorF << FGCOL_SHIFT ) | 0x20;
+			char v = pen();
 			switch ( mode ) {
 			case 0:	// erase below
 				for ( int y=cursY+1; y < height; ++y ) {
-					for ( int x=0; x < width; ++x ) {
-						buffer[ y * width + x ] = v;
-					}
+					blank( rowOffs( y ), width, v );
 				}
+				damageRows( cursY + 1, height );
 				break;
 			case 1: // erase above
 				for ( int y=0; y < cursY; ++y ) {
-					for ( int x=0; x < width; ++x ) {
-						buffer[ y * width + x ] = v;
-					}
+					blank( rowOffs( y ), width, v );
 				}
+				damageRows( 0, cursY );
 				break;
 			case 2: // erase all
 				for ( int y=0; y < height; ++y ) {
-					for ( int x=0; x < width; ++x ) {
-						buffer[ y * width + x ] = v;
-					}
+					blank( rowOffs( y ), width, v );
 				}
+				damageRows( 0, height );
 				break;
 			case 3: // erase saved lines (xterm)
+				scrollback.clear();
+				viewOffset = 0;
+				damageAll();
 				break;
 			}
 			
@@ -424,113 +841,116 @@ public class TextScreen {
 		else if ( c == 'L' ) {
 			int cnt = 1;
 			if ( nargs >= 1 ) cnt = args[0];
-			while ( --cnt >= 0 ) insertLine();
+			if ( cnt > 0 ) insertLines( cnt );
 		}
 		else if ( c == 'M' ) {
 			int cnt = 1;
 			if ( nargs >= 1 ) cnt = args[0];
-			while ( --cnt >= 0 ) deleteLine();
+			if ( cnt > 0 ) deleteLines( cnt );
 		}
 		else if ( c == 'P' ) {	// delete chars
 			int cnt = 1;
 			if ( nargs >= 1 ) cnt = args[0];
 			int sourceX = cursX + 1 + cnt;
 			int targetX = cursX;
-			int v = ( userA << ATTR_SHIFT ) | ( colorB << BGCOL_SHIFT ) | ( colorF << FGCOL_SHIFT ) | 0x20;
-			int offs = cursY * width;
+			char v = pen();
+			int offs = rowOffs( cursY );
 			while ( targetX < width ) {
-				int data = sourceX < width ? buffer[ offs + sourceX ] : v;
-				buffer[ offs + targetX ] = data;
+				if ( sourceX < width ) {
+					chars [ offs + targetX ] = chars [ offs + sourceX ];
+					styles[ offs + targetX ] = styles[ offs + sourceX ];
+				}
+				else {
+					chars [ offs + targetX ] = 0x20;
+					styles[ offs + targetX ] = v;
+				}
 				++sourceX; ++targetX;
 			}
+			damage( cursY, cursX, width );
 		}
 		else if ( DEC && c == 'h' ) {
-			int code = 0;
-			if ( nargs >= 0 ) {
-				code = args[0];
-			}
-			switch ( code ) {
-			case 1:	// enable application cursor keys
-				applicationCursorKeys = true;
-				break;
-			case 12:	// start cursor blinking
-				hideCursor();
-				++cursorBlinkNest;
-				showCursor();
-				break;
-			case 25:	// cursor visible
-				showCursor();
-				break;
-			case 1047:	// enable alternate screen buffer
-				if ( !onAlternateScreen ) {
-					switchScreen();
-					onAlternateScreen = true;
-				}
-				break;
-			case 1048:	// save cursor
-				saveCursX = cursX; saveCursY = cursY; 
-				break;
-			case 1049:	// enable alternate screen buffer, save cursor, clear screen
-				if ( !onAlternateScreen ) {
+			for ( int i=0; i < nargs; ++i ) {
+				int code = args[i];
+				switch ( code ) {
+				case 1:	// enable application cursor keys
+					applicationCursorKeys = true;
+					break;
+				case 12:	// start cursor blinking
+					cursorBlink = true;
+					break;
+				case 25:	// cursor visible
+					cursorVisible = true;
+					break;
+				case 1047:	// enable alternate screen buffer
+					if ( !onAlternateScreen ) {
+						switchScreen();
+						onAlternateScreen = true;
+					}
+					break;
+				case 1048:	// save cursor
 					saveCursX = cursX; saveCursY = cursY; 
-					switchScreen();
-					cls( colorF, colorB );
-					onAlternateScreen = true;
+					break;
+				case 1049:	// enable alternate screen buffer, save cursor, clear screen
+					if ( !onAlternateScreen ) {
+						saveCursX = cursX; saveCursY = cursY; 
+						switchScreen();
+						cls( colorF, colorB );
+						onAlternateScreen = true;
+					}
+					break;
+				case 4:		// smooth scroll
+					jumpScroll = false;
+					break;
+				case 2004:	// enable bracketed paste mode
+					bracketedPasteMode = true;
+					break;
+				default:
+					System.out.printf( "Unknown CSI ? h code %d\n", code );
+					break;
 				}
-				break;
-			case 2004:	// enable bracketed paste mode
-				bracketedPasteMode = true;
-				break;
-			default:
-				System.out.printf( "Unknown CSI ? h code %d\n", code );
-				break;
 			}
 		}
 		else if ( DEC && c == 'l' ) {
-			int code = 0;
-			if ( nargs >= 0 ) {
-				code = args[0];
-			}
-			switch ( code ) {
-			case 1:	// disable application cursor keys
-				applicationCursorKeys = false;
-				break;
-			case 12:	// stop cursor blinking
-				hideCursor();
-				--cursorBlinkNest;
-				showCursor();
-				break;
-			case 25: 	// cursor invisible
-				hideCursor();
-				break;
-			case 1047:	// disable alternate screen buffer, clear screen
-				if ( onAlternateScreen ) {
-					switchScreen();
-					cls( colorF, colorB );
-					onAlternateScreen = false;
-				}
-				break;
-			case 1048:	// restore cursor position
-				hideCursor();
-				cursX = saveCursX; cursY = saveCursY;
-				showCursor();
-				break;
-			case 1049:	// disable alternate screen buffer
-				if ( onAlternateScreen ) {
-					hideCursor();
+			for ( int i=0; i < nargs; ++i ) {
+				int code = args[i];
+				switch ( code ) {
+				case 1:	// disable application cursor keys
+					applicationCursorKeys = false;
+					break;
+				case 12:	// stop cursor blinking
+					cursorBlink = false;
+					break;
+				case 25: 	// cursor invisible
+					cursorVisible = false;
+					break;
+				case 1047:	// disable alternate screen buffer, clear screen
+					if ( onAlternateScreen ) {
+						switchScreen();
+						cls( colorF, colorB );
+						onAlternateScreen = false;
+					}
+					break;
+				case 1048:	// restore cursor position
 					cursX = saveCursX; cursY = saveCursY;
-					showCursor();
-					switchScreen();
-					onAlternateScreen = false;
-					scrollTop = 1; scrollBottom = height;
+					break;
+				case 1049:	// disable alternate screen buffer
+					if ( onAlternateScreen ) {
+						cursX = saveCursX; cursY = saveCursY;
+						switchScreen();
+						onAlternateScreen = false;
+						scrollTop = 1; scrollBottom = height;
+					}
+					break;
+				case 4:		// jump scroll
+					jumpScroll = true;
+					break;
+				case 2004:	// disable bracketed paste mode
+					bracketedPasteMode = true;
+					break;
+				default:
+					System.out.printf( "Unknown CSI ? l code %d\n", code );
+					break;
 				}
-				break;
-			case 2004:	// disable bracketed paste mode
-				bracketedPasteMode = true;
-				break;
-			default:
-				System.out.printf( "Unknown CSI ? l code %d\n", code );
-				break;
 			}			
 		}
 		else if ( c == 'r' ) {	// set scrolling region
@@ -551,44 +971,43 @@ public class TextScreen {
 			Unsupported CSI sequence: 23;0;0t
 		*/
 		else {
-			System.out.printf( "Unsupported CSI sequence: %s%c\n", csiSeq, (char) c );
+			System.out.printf( "Unsupported CSI sequence: %s\n", csiToString( c, marker, intermediates, args, nargs, subArgs ) );
 		}
 	}
 	
 	private void downLine() {
-		hideCursor();
 		if ( ++cursY > scrollBottom-1 ) {
 			cursY = scrollBottom - 1;
 			scrollUp();
 		}
-		showCursor();
 	}
 	
 	private void upLine() {
-		hideCursor();
 		if ( --cursY < scrollTop-1 ) {
 			cursY = scrollTop - 1;
-			scrollUp();
+			scrollDown();
 		}
-		showCursor();
 	}
 	
 	private void nextLine() {
-		hideCursor();
 		cursX = 0;
 		downLine();
-		showCursor();
 	}
 
 	private void prevLine() {
-		hideCursor();
 		cursX = 0;
 		upLine();
-		showCursor();
 	}
 	
 	private void scrollDown() {
-		hideCursor();
+		scrollDown( 1 );
+	}
+
+	/**
+	 * Scrolls the scroll region down by n lines by rotating its row pointers,
+	 * then blanks the n rows that come in at the top.
+	 */
+	private void scrollDown( int n ) {
 		int yStart = scrollTop    - 1;
 		int yEnd   = scrollBottom - 1;
 		if ( yStart < 0 ) yStart = 0; else if ( yStart > height - 1 ) yStart = height - 1;
@@ -596,21 +1015,26 @@ public class TextScreen {
 		if ( yEnd < yStart ) {
 			int temp = yStart; yStart = yEnd; yEnd = temp;
 		}
-		int nblock  = width * ( yEnd - yStart );
-		int oSource = yStart * width;
-		int oTarget = oSource + width;
-		for ( int i=nblock-1; i >= 0; --i ) {
-			buffer[ oTarget + i ] = buffer[ oSource + i ];
-		}
-		int v = ( userA << ATTR_SHIFT ) | ( colorB << BGCOL_SHIFT ) | ( colorF << FGCOL_SHIFT ) | 0x20;
-		for ( int i=0; i < width; ++i ) {
-			buffer[ oSource + i ] = v; 
-		}
-		showCursor();
+		int nrows = yEnd - yStart + 1;
+		if ( n > nrows ) n = nrows;
+		System.arraycopy( rowMap, yEnd + 1 - n, rowTemp, 0, n );
+		System.arraycopy( rowMap, yStart, rowMap, yStart + n, nrows - n );
+		System.arraycopy( rowTemp, 0, rowMap, yStart, n );
+		clearRows( yStart, yStart + n );
+		damageRows( yStart, yEnd + 1 );
 	}
 
 	private void scrollUp() {
-		hideCursor();
+		scrollUp( 1, true );
+	}
+
+	/**
+	 * Scrolls the scroll region up by n lines by rotating its row pointers,
+	 * then blanks the n rows that come in at the bottom. If archive is set
+	 * (line feeds, not deleted lines), lines leaving the top of the main
+	 * screen go to the scrollback.
+	 */
+	private void scrollUp( int n, boolean archive ) {
 		int yStart = scrollTop    - 1;
 		int yEnd   = scrollBottom - 1;
 		if ( yStart < 0 ) yStart = 0; else if ( yStart > height - 1 ) yStart = height - 1;
@@ -618,192 +1042,393 @@ public class TextScreen {
 		if ( yEnd < yStart ) {
 			int temp = yStart; yStart = yEnd; yEnd = temp;
 		}
-		int nblock  = width * ( yEnd - yStart );
-		int oTarget = yStart * width;
-		int oSource = oTarget + width;
-		for ( int i=0; i < nblock; ++i ) {
-			buffer[ oTarget + i ] = buffer[ oSource + i ];
+		int nrows = yEnd - yStart + 1;
+		if ( n > nrows ) n = nrows;
+		System.arraycopy( rowMap, yStart, rowTemp, 0, n );
+		if ( archive && yStart == 0 && !onAlternateScreen ) {
+			for ( int i=0; i < n; ++i ) {
+				scrollback.push( chars, styles, rowTemp[i] * width );
+			}
+			if ( viewOffset > 0 ) {
+				viewOffset = Math.min( viewOffset + n, scrollback.size() );
+				damageAll();
+			}
+		}
+		System.arraycopy( rowMap, yStart + n, rowMap, yStart, nrows - n );
+		System.arraycopy( rowTemp, 0, rowMap, yEnd + 1 - n, n );
+		clearRows( yEnd + 1 - n, yEnd + 1 );
+		damageRows( yStart, yEnd + 1 );
+	}
+
+	private void clearRows( int yFrom, int yTo ) {
+		char v = pen();
+		for ( int y=yFrom; y < yTo; ++y ) {
+			blank( rowOffs( y ), width, v );
 		}
-		int v = ( userA << ATTR_SHIFT ) | ( colorB << BGCOL_SHIFT ) | ( colorF << FGCOL_SHIFT ) | 0x20;
-		for ( int i=0; i < width; ++i ) {
-			buffer[ oTarget + nblock + i ] = v; 
+	}
+
+	/**
+	 * Fills n cells from buffer offset o with blanks of style v.
+	 */
+	private void blank( int o, int n, char v ) {
+		for ( int i=o; i < o + n; ++i ) {
+			chars [i] = 0x20;
+			styles[i] = v;
 		}
-		showCursor();
 	}
 	
-	private void insertLine() {
+	private void insertLines( int n ) {
 		if ( cursY < scrollTop-1 || cursY > scrollBottom-1 ) return;
 		// System.out.printf( "cursY=%d, scrollTop=%d, scrollBottom=%d\n", cursY, scrollTop, scrollBottom );
 		int old = scrollTop;
 		scrollTop = cursY + 1;
-		scrollDown();
+		scrollDown( n );
 		scrollTop = old;
 	}
 
-	private void deleteLine() {
+	private void deleteLines( int n ) {
 		if ( cursY < scrollTop-1 || cursY > scrollBottom-1 ) return;
 		// System.out.printf( "cursY=%d, scrollTop=%d, scrollBottom=%d\n", cursY, scrollTop, scrollBottom );
 		int old = scrollTop;
 		scrollTop = cursY + 1;
-		scrollUp();
+		scrollUp( n, false );
 		scrollTop = old;
 	}
 
-	private void writech( int c, boolean iscp ) {
-		if ( utf8 ) {
-			if ( ( c & 0xc0 ) == 0x80 ) {
-				utf8_cp = ( utf8_cp << 6 ) | ( c & 0x3f );
-				if ( --utf8_remain <= 0 ) {
-					int cp = utf8_cp;
-					utf8 = false; utf8_cp = 0; utf8_remain = 0;
-					writech( cp, true );
-				}
-			}
-			else {
-				int cp = utf8_cp;
-				utf8 = false; utf8_cp = 0; utf8_remain = 0;
-				writech( cp, true  ); 
-				writech( c , false );
-			}
-			return;
-		}
-		else if ( !iscp ) {
-			if ( ( c & 0xe0 ) == 0xc0 ) {	// 2 byte cp
-				utf8 = true; utf8_cp = c & 0x1f; utf8_remain = 1;
-				return;
-			}
-			else if ( ( c & 0xf0 ) == 0xe0 ) { 	// 3 byte cp
-				utf8 = true; utf8_cp = c & 0x0f; utf8_remain = 2;
-				return;
-			}
-			else if ( ( c & 0xf8 ) == 0xf0 ) {	// 4 byte cp
-				utf8 = true; utf8_cp = c & 0x07; utf8_remain = 3;				
-				return;
-			}
-		}
-		if ( escape ) {
-			if ( !osc && !csi ) {
-				if ( c == ']' ) {	// OSC
-					osc = true;
-				}
-				else if ( c == '[' ) {	// CSI
-					csi = true;
-				}
-			}
-			else if ( osc ) {
-				if ( c == 7 || c == 0x9c ) {	// BEL or ST
-					handleOsc();
-					oscSeq = new String();
-					osc = false;
-					escape = false;
-				}	
-				else {
-					oscSeq += (char) c;
-				}
-			}
-			else if ( csi ) {
-				if ( c >= 64 && c < 127 ) {
-					handleCsi( c );
-					csiSeq = new String();
-					csi = false;
-					escape = false;
-				}
-				else {
-					csiSeq += (char) c;
-				}
-			}
-		} 
-		else if ( c == 27 ) {
-			escape = true;
-		}
-		else if ( c == 0x9b ) {
-			escape = true;
-			csi = true;
+	/**
+	 * Jump scroll: when the cursor sits on the bottom margin, counts the line
+	 * feeds that follow in arr[from..to) up to the first escape sequence and
+	 * performs their scrolls in one block move up front. The line feeds then
+	 * only move the cursor down. The result is the same as scrolling line by
+	 * line, since nothing before the next escape sequence can move the cursor
+	 * up or change the fill attributes.
+	 * 
+	 * Returns the index where the scan stopped.
+	 */
+	private int jumpScroll( byte[] arr, int from, int to ) {
+		int max = Math.min( scrollBottom, height ) - Math.max( scrollTop, 1 );
+		int n = 0;
+		int i = from;
+		while ( i < to && n < max ) {
+			int b = arr[i];
+			if ( b == 0x1b || b == (byte) 0xc2 ) break;	// ESC, or a possible UTF-8 encoded C1 control
+			if ( b == 10 ) ++n;
+			++i;
 		}
-		else if ( c == 0x9d ) {
-			escape = true;
-			osc = true;
+		if ( n > 1 ) {
+			scrollUp( n, true );
+			cursY -= n;
 		}
-		else if ( c == 13 ) {
-			hideCursor();
+		return i;
+	}
+	
+	void execute( int c ) {
+		if ( c == 13 ) {
 			cursX = 0;
-			showCursor();
 		}
 		else if ( c == 10 ) {
-			hideCursor();
 			nextLine();
-			showCursor();
 		}
 		else if ( c == 9 ) { // HTAB
-			hideCursor();
 			cursX = ( cursX + 8 ) & ~7;
 			if ( cursX >= width ) {
 				cursX %= width;
 				downLine();
 			}
-			showCursor();
 		}
 		else if ( c == 8 ) { // BKSP
-			hideCursor();
 			if ( cursX > 0 ) {
 				--cursX;
 			}
-			showCursor();
 		}
 		else if ( c == 7 ) {	// BEL
 			
 		}
-		else {
-			hideCursor();
-			if ( c > 255 ) {
-				c = FontData.UNSUPPORTED_CHAR;
-			}
-			int v = ( userA << ATTR_SHIFT ) | ( colorB << BGCOL_SHIFT ) | ( colorF << FGCOL_SHIFT ) | c;
-			buffer[ cursY * width + cursX ] = v;
-			if ( ++cursX >= width ) {
-				nextLine();
-			}
-			showCursor();
+		else if ( c != 0x18 && c != 0x1a ) {	// CAN / SUB only cancel sequences
+			print( c );
 		}
 	}
 	
-	private void hideCursor() {
-		if ( --cursorVisibleNest == 0 ) {
-			buffer[ cursY * width + cursX ] &= ~( ( Attributes.ATTRF_BLINKSLOW | Attributes.ATTRF_INVERSE ) << ATTR_SHIFT );
+	void print( int c ) {
+		int o = rowOffs( cursY ) + cursX;
+		chars[o]  = c;
+		styles[o] = pen();
+		damage( cursY, cursX, cursX + 1 );
+		if ( ++cursX >= width ) {
+			nextLine();
 		}
 	}
 	
-	private void showCursor() {
-		if ( ++cursorVisibleNest == 1 ) {
-			if ( cursorBlinkNest >= 1 ) {
-				buffer[ cursY * width + cursX ] |= Attributes.ATTRF_BLINKSLOW << ATTR_SHIFT;											
-			} 
-			else {
-				buffer[ cursY * width + cursX ] |= Attributes.ATTRF_INVERSE << ATTR_SHIFT;							
+	/**
+	 * Writes a run of printable ASCII characters (0x20..0x7e) straight into
+	 * the cell buffer, one row segment at a time.
+	 */
+	void printRun( byte[] arr, int from, int to ) {
+		char v = pen();
+		while ( from < to ) {
+			int n = to - from;
+			if ( n > width - cursX ) n = width - cursX;
+			int o = rowOffs( cursY ) + cursX;
+			for ( int i=0; i < n; ++i ) {
+				chars [ o + i ] = arr[ from + i ];
+				styles[ o + i ] = v;
+			}
+			damage( cursY, cursX, cursX + n );
+			from += n;
+			cursX += n;
+			if ( cursX >= width ) {
+				nextLine();
 			}
 		}
 	}
 	
-	public void write( byte[] arr, int offs, int len ) {
+	/**
+	 * Writes a run of printable code points into the cell buffer, one row
+	 * segment at a time.
+	 */
+	void printRun( int[] cps, int from, int to ) {
+		char v = pen();
+		while ( from < to ) {
+			int n = to - from;
+			if ( n > width - cursX ) n = width - cursX;
+			int o = rowOffs( cursY ) + cursX;
+			System.arraycopy( cps, from, chars, o, n );
+			Arrays.fill( styles, o, o + n, v );
+			damage( cursY, cursX, cursX + n );
+			from += n;
+			cursX += n;
+			if ( cursX >= width ) {
+				nextLine();
+			}
+		}
+	}
+	
+	private void lockModel() {
 		try {
-			writeSem.acquire();
+			modelSem.acquire();
 		}
 		catch ( InterruptedException e ) {
 			System.err.println( "Thread was interrupted while waiting for semaphore" );
 			e.printStackTrace();
 			System.exit( 1 );
 		}
-		hideCursor();
-		for ( int i=0; i < len; ++i ) {
-			int c = arr[offs+i] & 255;
-			writech( c, false );			
+	}
+
+	public void write( byte[] arr, int offs, int len ) {
+		lockModel();
+		int i   = offs;
+		int end = offs + len;
+		int jumpScanned = offs;
+		while ( i < end ) {
+			if ( jumpScroll && cursY == scrollBottom - 1 && i >= jumpScanned && 
+				 decoder.isIdle() && parser.isInGround() ) {
+				jumpScanned = jumpScroll( arr, i, end );
+			}
+			if ( decoder.isIdle() && parser.isInGround() ) {
+				int j = ControlScanner.scan( arr, i, end );
+				if ( j > i ) {
+					printRun( arr, i, j );
+					i = j;
+					continue;
+				}
+			}
+			// decode and parse up to where the next printable ASCII run starts,
+			// or, inside a sequence, up to where the current one ends
+			int j;
+			if ( arr[i] >= 0x20 && arr[i] != 0x7f ) {
+				j = ControlScanner.scan( arr, i, end );
+			}
+			else {
+				j = i + 1;
+				while ( j < end && ( arr[j] < 0x20 || arr[j] == 0x7f ) ) ++j;
+			}
+			if ( j - i > CPBUF_SIZE ) j = i + CPBUF_SIZE;
+			int n = decoder.decode( arr, i, j, cpBuf );
+			parser.advance( cpBuf, 0, n );
+			i = j;
 		}
-		showCursor();
-		writeSem.release();
+		notifyChange();
+		modelSem.release();
 	}
 	
-	public int[] getBuffer() {
-		return buffer;
+	/**
+	 * Copies the code points and styles of the visible screen into
+	 * dstChars and dstStyles, which must hold at least columns * rows cells
+	 * each, and the styles the ids refer to into dstTable. The copy is taken
+	 * between two write batches, so it never shows a half-applied escape
+	 * sequence.
+	 */
+	public void snapshot( int[] dstChars, char[] dstStyles, StyleTable dstTable ) {
+		lockModel();
+		for ( int y=0; y < height; ++y ) {
+			int line = y - viewOffset;
+			if ( line < 0 ) {
+				scrollback.getLine( -line - 1, dstChars, dstStyles, y * width );
+			}
+			else {
+				System.arraycopy( chars, rowOffs( line ), dstChars, y * width, width );
+				System.arraycopy( styles, rowOffs( line ), dstStyles, y * width, width );
+			}
+		}
+		styleTable.copyTo( dstTable );
+		snapCursor = cursor();
+		snapColorChanges = colorChanges;
+		modelSem.release();
+	}
+
+	/**
+	 * Like snapshot(), but only copies the cells that changed since the
+	 * last call, and then forgets that damage: dstChars and dstStyles must
+	 * hold the result of the previous snapshot. For each row y, the changed
+	 * columns are stored as [dstFrom[y], dstTo[y]), an empty range if the
+	 * row did not change. Returns false if nothing changed at all.
+	 * 
+	 * Only one caller, the renderer, may use this.
+	 */
+	public boolean snapshotDamaged( int[] dstChars, char[] dstStyles, StyleTable dstTable, int[] dstFrom, int[] dstTo ) {
+		lockModel();
+		boolean any = false;
+		for ( int y=0; y < height; ++y ) {
+			if ( ( dirtyRows[ y >> 6 ] & ( 1L << y ) ) == 0 ) {
+				dstFrom[y] = dstTo[y] = 0;
+				continue;
+			}
+			int x0 = dirtyFrom[y];
+			int x1 = dirtyTo[y];
+			int line = y - viewOffset;
+			if ( line < 0 ) {
+				scrollback.getLine( -line - 1, dstChars, dstStyles, y * width );
+			}
+			else {
+				System.arraycopy( chars, rowOffs( line ) + x0, dstChars, y * width + x0, x1 - x0 );
+				System.arraycopy( styles, rowOffs( line ) + x0, dstStyles, y * width + x0, x1 - x0 );
+			}
+			dstFrom[y]   = x0;
+			dstTo[y]     = x1;
+			dirtyFrom[y] = width;
+			dirtyTo[y]   = 0;
+			any = true;
+		}
+		Arrays.fill( dirtyRows, 0L );
+		if ( any ) {
+			styleTable.copyTo( dstTable );
+		}
+		snapCursor = cursor();
+		snapColorChanges = colorChanges;
+		modelSem.release();
+		return any;
+	}
+
+	private int cursor() {
+		int y = cursY + viewOffset;
+		if ( !cursorVisible || y >= height ) return -1;
+		return ( y * width + cursX ) | ( cursorShape << 24 ) | ( cursorBlink ? CURSOR_BLINKING : 0 );
+	}
+
+	/**
+	 * Sets the listener that is run, by the thread that changed the
+	 * screen, whenever cells are damaged or the cursor differs from the
+	 * last snapshot. It must not block or call back into this screen.
+	 */
+	public void setChangeListener( Runnable listener ) {
+		changeListener = listener;
+	}
+
+	private void notifyChange() {
+		Runnable listener = changeListener;
+		if ( listener == null ) return;
+		boolean changed = cursor() != snapCursor;
+		for ( int i=0; i < dirtyRows.length && !changed; ++i ) {
+			changed = dirtyRows[i] != 0;
+		}
+		if ( changed ) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Returns the cursor as it was at the last snapshot: -1 if it was
+	 * hidden or scrolled out of the viewport, else its cell in the snapshot
+	 * (row * columns + column) in bits 0..23, its shape (CURSOR_BLOCK etc.)
+	 * in bits 24..25, and CURSOR_BLINKING if it blinks. The cursor is not
+	 * part of the cells; the renderer draws it over them.
+	 */
+	public int getSnapshotCursor() {
+		return snapCursor;
+	}
+
+	Scrollback getScrollback() {
+		return scrollback;
+	}
+
+	StyleTable getStyleTable() {
+		return styleTable;
+	}
+
+	/**
+	 * Scrolls the viewport back into the history by the given number of
+	 * lines, or forward if negative.
+	 */
+	public void scrollView( int lines ) {
+		lockModel();
+		int old = viewOffset;
+		viewOffset = Math.max( 0, Math.min( viewOffset + lines, scrollback.size() ) );
+		if ( viewOffset != old ) {
+			damageAll();
+		}
+		notifyChange();
+		modelSem.release();
+	}
+
+	/**
+	 * Searches the scrollback history for lines containing query and
+	 * returns their line numbers, newest first.
+	 */
+	public long[] search( String query, boolean ignoreCase, int maxResults ) {
+		lockModel();
+		long[] found = scrollback.search( query, ignoreCase, maxResults );
+		modelSem.release();
+		return found;
+	}
+
+	/**
+	 * Returns views of the scrollback history for RegexSearch.
+	 */
+	Scrollback.Segment[] scrollbackSegments() {
+		lockModel();
+		Scrollback.Segment[] segs = scrollback.segments();
+		modelSem.release();
+		return segs;
+	}
+
+	/**
+	 * Scrolls the viewport so that the scrollback line with the given
+	 * number (as returned by search) is its top line. Returns false if the
+	 * line has been evicted meanwhile.
+	 */
+	public boolean showLine( long line ) {
+		lockModel();
+		int age = scrollback.ageOf( line );
+		if ( age >= 0 ) {
+			viewOffset = age + 1;
+			damageAll();
+		}
+		notifyChange();
+		modelSem.release();
+		return age >= 0;
+	}
+
+	/**
+	 * Returns the viewport to the live screen.
+	 */
+	public void resetView() {
+		lockModel();
+		if ( viewOffset != 0 ) {
+			viewOffset = 0;
+			damageAll();
+		}
+		notifyChange();
+		modelSem.release();
 	}
 	
 	public int getColumns() {
@@ -822,4 +1447,39 @@ public class TextScreen {
 		return applicationCursorKeys;
 	}
 	
+	/**
+	 * Returns how many times OSC 4, 10 or 11 had changed a color as of the
+	 * last snapshot; when this differs from the previous value, the renderer
+	 * should fetch the colors with copyColors().
+	 */
+	public int getSnapshotColorChanges() {
+		return snapColorChanges;
+	}
+	
+	/**
+	 * Copies the colors set by OSC 4 for the 256 xterm palette entries into
+	 * dstPalette, and those set by OSC 10 and 11 for the default foreground
+	 * and background into dstDefaults[0] and [1], all as 0xRRGGBB, or -1
+	 * where a color has not been changed.
+	 */
+	public void copyColors( int[] dstPalette, int[] dstDefaults ) {
+		lockModel();
+		System.arraycopy( paletteRGB, 0, dstPalette, 0, paletteRGB.length );
+		dstDefaults[0] = defaultFgRGB;
+		dstDefaults[1] = defaultBgRGB;
+		modelSem.release();
+	}
+	
+	public String getHyperlink() {
+		return hyperlink;
+	}
+	
+	public int getSemanticMark() {
+		return semanticMark;
+	}
+	
+	public int getLastExitStatus() {
+		return lastExitStatus;
+	}
+	
 }
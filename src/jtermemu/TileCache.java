@@ -0,0 +1,202 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+
+package jtermemu;
+
+import java.util.Arrays;
+
+/**
+ * Cache of fully rendered character cell tiles.
+ * 
+ * A tile is keyed by everything its pixels depend on: the glyph (font
+ * character plus the attributes that change its shape, packed into one
+ * int by the caller) and the pixel values of foreground, background and
+ * underline. Keys live in parallel arrays indexed by tile number and are
+ * found through an open addressing table, like the styles in StyleTable.
+ * 
+ * When the cache is full, a clock sweep picks the tile to reuse: every hit
+ * sets the tile's reference bit, and the clock hand passes over (and
+ * clears) referenced tiles until it finds one that has not been used
+ * since its last visit.
+ * 
+ * Hit, miss and eviction counts are kept for sizing the cache.
+ * 
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class TileCache {
+
+	public static final int 	DEFAULT_CAPACITY = 2048;
+
+	private int[][] 	tiles;
+	private int[] 		glyph;
+	private int[] 		fg;
+	private int[] 		bg;
+	private int[] 		ul;
+	private int[] 		hashes;
+	private boolean[] 	ref;
+	private int[] 		slots;			// open addressing: tile + 1, or 0 if empty
+	private int 		top  = 0;		// tiles below top are in use
+	private int 		hand = 0;
+	private long 		hits, misses, evictions;
+
+	/**
+	 * Creates a cache of capacity_ tiles of tileSize_ pixels each.
+	 */
+	public TileCache( int capacity_, int tileSize_ ) {
+		tiles 	= new int [ capacity_ ][ tileSize_ ];
+		glyph 	= new int [ capacity_ ];
+		fg 		= new int [ capacity_ ];
+		bg 		= new int [ capacity_ ];
+		ul 		= new int [ capacity_ ];
+		hashes 	= new int [ capacity_ ];
+		ref 	= new boolean [ capacity_ ];
+		int n = 1;
+		while ( n < capacity_ * 2 ) n <<= 1;
+		slots = new int [ n ];
+	}
+
+	private static int hash( int glyph, int fg, int bg, int ul ) {
+		int h = glyph;
+		h = h * 31 + fg;
+		h = h * 31 + bg;
+		h = h * 31 + ul;
+		return h * 0x9e3779b1;
+	}
+
+	/**
+	 * Returns the number of the tile with the given key, or -1 if it is
+	 * not cached.
+	 */
+	public int find( int glyph_, int fg_, int bg_, int ul_ ) {
+		int mask = slots.length - 1;
+		int s = ( hash( glyph_, fg_, bg_, ul_ ) >>> 8 ) & mask;
+		for ( int e; ( e = slots[s] ) != 0; s = ( s + 1 ) & mask ) {
+			int t = e - 1;
+			if ( glyph[t] == glyph_ && fg[t] == fg_ && bg[t] == bg_ && ul[t] == ul_ ) {
+				ref[t] = true;
+				++hits;
+				return t;
+			}
+		}
+		++misses;
+		return -1;
+	}
+
+	/**
+	 * Makes room for the tile with the given key, which must not be cached
+	 * yet, and returns its number. The caller draws it into getTile().
+	 */
+	public int add( int glyph_, int fg_, int bg_, int ul_ ) {
+		int t;
+		if ( top < tiles.length ) {
+			t = top++;
+		}
+		else {
+			while ( ref[hand] ) {
+				ref[hand] = false;
+				if ( ++hand == tiles.length ) hand = 0;
+			}
+			t = hand;
+			if ( ++hand == tiles.length ) hand = 0;
+			remove( t );
+			++evictions;
+		}
+		glyph[t]  = glyph_;
+		fg[t] 	  = fg_;
+		bg[t] 	  = bg_;
+		ul[t] 	  = ul_;
+		hashes[t] = hash( glyph_, fg_, bg_, ul_ );
+		ref[t] 	  = false;
+		int mask = slots.length - 1;
+		int s = ( hashes[t] >>> 8 ) & mask;
+		while ( slots[s] != 0 ) s = ( s + 1 ) & mask;
+		slots[s] = t + 1;
+		return t;
+	}
+
+	/**
+	 * Removes tile t from the table, shifting back the entries of its
+	 * probe run so that lookups never stop at the hole.
+	 */
+	private void remove( int t ) {
+		int mask = slots.length - 1;
+		int s = ( hashes[t] >>> 8 ) & mask;
+		while ( slots[s] != t + 1 ) s = ( s + 1 ) & mask;
+		for ( int j = ( s + 1 ) & mask; slots[j] != 0; j = ( j + 1 ) & mask ) {
+			int home = ( hashes[ slots[j] - 1 ] >>> 8 ) & mask;
+			// leave entries whose home slot lies cyclically in (s, j]
+			if ( s <= j ? ( s < home && home <= j ) : ( s < home || home <= j ) ) continue;
+			slots[s] = slots[j];
+			s = j;
+		}
+		slots[s] = 0;
+	}
+
+	/**
+	 * Drops all tiles.
+	 */
+	public void clear() {
+		Arrays.fill( slots, 0 );
+		Arrays.fill( ref, false );
+		top  = 0;
+		hand = 0;
+	}
+
+	public int[] getTile( int t ) {
+		return tiles[t];
+	}
+
+	public int capacity() {
+		return tiles.length;
+	}
+
+	public int size() {
+		return top;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the fraction of lookups that found their tile, or 0 if there
+	 * were none.
+	 */
+	public double getHitRate() {
+		long n = hits + misses;
+		return n == 0 ? 0.0 : (double) hits / n;
+	}
+
+	public void resetStatistics() {
+		hits = misses = evictions = 0;
+	}
+
+}
@@ -0,0 +1,153 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+package jtermemu;
+
+/**
+ * Trigram index over the lines of one sealed scrollback block.
+ * 
+ * Every three consecutive characters of a line (ASCII letters folded to
+ * lower case) are hashed into one of BUCKETS buckets; each bucket holds
+ * the ascending list of lines that contain a trigram hashing to it, each
+ * line at most once. Looking up a string intersects the lists of its
+ * trigrams, which yields a superset of the lines containing it; callers
+ * verify those candidates against the actual text.
+ * 
+ * The index is built in two linear passes (count, then scatter), so
+ * sealing a block costs about as much as encoding its lines did, and it
+ * is dropped together with its block.
+ * 
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class TrigramIndex {
+
+	private static final int 	BUCKET_BITS = 12;
+	public static final int 	BUCKETS 	= 1 << BUCKET_BITS;
+
+	private int[] 				starts;		// list of bucket b is postings[ starts[b]..starts[b+1] )
+	private short[] 			postings;	// line numbers within the block
+
+	/**
+	 * Indexes the text of lines 0..lines-1, where line i is
+	 * data[ textStart[i]..textStart[i]+textLength[i] ).
+	 */
+	TrigramIndex( byte[] data, int[] textStart, int[] textLength, int lines ) {
+		int[] count = new int [ BUCKETS + 1 ];
+		for ( int line=0; line < lines; ++line ) {
+			int p = textStart[line];
+			int n = textLength[line];
+			if ( n < 3 ) continue;
+			int g = ( fold( data[p] ) << 8 ) | fold( data[p+1] );
+			for ( int i=2; i < n; ++i ) {
+				g = ( ( g << 8 ) | fold( data[p+i] ) ) & 0xffffff;
+				++count[ bucket( g ) + 1 ];
+			}
+		}
+		for ( int b=0; b < BUCKETS; ++b ) {
+			count[b+1] += count[b];
+		}
+		short[] post = new short [ count[BUCKETS] ];
+		int[] fill = new int [ BUCKETS ];
+		System.arraycopy( count, 0, fill, 0, BUCKETS );
+		for ( int line=0; line < lines; ++line ) {
+			int p = textStart[line];
+			int n = textLength[line];
+			if ( n < 3 ) continue;
+			int g = ( fold( data[p] ) << 8 ) | fold( data[p+1] );
+			for ( int i=2; i < n; ++i ) {
+				g = ( ( g << 8 ) | fold( data[p+i] ) ) & 0xffffff;
+				int b = bucket( g );
+				int k = fill[b];
+				if ( k == count[b] || post[k-1] != (short) line ) {
+					post[k] = (short) line;
+					fill[b] = k + 1;
+				}
+			}
+		}
+		// close the gaps left by repeated trigrams
+		starts = new int [ BUCKETS + 1 ];
+		int w = 0;
+		for ( int b=0; b < BUCKETS; ++b ) {
+			int n = fill[b] - count[b];
+			System.arraycopy( post, count[b], post, w, n );
+			starts[b] = w;
+			w += n;
+		}
+		starts[BUCKETS] = w;
+		postings = new short [w];
+		System.arraycopy( post, 0, postings, 0, w );
+	}
+
+	static int fold( byte c ) {
+		return c >= 'A' && c <= 'Z' ? c + 32 : c & 255;
+	}
+
+	/**
+	 * Returns the bucket of the trigram ( a << 16 ) | ( b << 8 ) | c, with
+	 * each character folded by fold().
+	 */
+	static int bucket( int trigram ) {
+		return ( trigram * 0x9e3779b1 ) >>> ( 32 - BUCKET_BITS );
+	}
+
+	/**
+	 * Stores the ascending list of lines that may contain all of the given
+	 * buckets' trigrams in dst, and returns its length.
+	 */
+	int candidates( int[] buckets, int nbuckets, int[] dst ) {
+		// start with the shortest list
+		int best = 0;
+		for ( int i=0; i < nbuckets; ++i ) {
+			int b = buckets[i];
+			int n = starts[b+1] - starts[b];
+			if ( n == 0 ) return 0;
+			if ( n < starts[ buckets[best] + 1 ] - starts[ buckets[best] ] ) best = i;
+		}
+		int bb = buckets[best];
+		int n  = 0;
+		for ( int k=starts[bb]; k < starts[bb+1]; ++k ) {
+			dst[n++] = postings[k];
+		}
+		for ( int i=0; i < nbuckets && n > 0; ++i ) {
+			if ( i == best ) continue;
+			int b = buckets[i];
+			int k = starts[b], end = starts[b+1];
+			int m = 0;
+			for ( int j=0; j < n && k < end; ) {
+				int a = dst[j], c = postings[k];
+				if ( a < c ) ++j;
+				else if ( a > c ) ++k;
+				else { dst[m++] = a; ++j; ++k; }
+			}
+			n = m;
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the approximate heap size of the index in bytes.
+	 */
+	long sizeInBytes() {
+		return 4L * starts.length + 2L * postings.length;
+	}
+
+}
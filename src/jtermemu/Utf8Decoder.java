@@ -0,0 +1,113 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe
+*/
+
+package jtermemu;
+
+/**
+ * Incremental UTF-8 decoder.
+ *
+ * Byte chunks are turned into code points; a sequence that is cut off at
+ * the end of a chunk is completed with the next chunk. Malformed input
+ * (stray continuation bytes, overlong forms, surrogates, code points above
+ * U+10FFFF, truncated sequences) is replaced by U+FFFD, one replacement per
+ * maximal ill-formed subpart as recommended by the Unicode standard. A byte
+ * that ends a truncated sequence is decoded again as the start of the next
+ * character.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class Utf8Decoder {
+
+	public static final int REPLACEMENT_CHAR = 0xfffd;
+
+	private int cp = 0;			// code point bits collected so far
+	private int remain = 0;		// continuation bytes still expected
+	private int lower = 0x80;	// valid range of the next continuation byte
+	private int upper = 0xbf;
+
+	/**
+	 * Returns true if no multi-byte sequence is pending.
+	 */
+	public boolean isIdle() {
+		return remain == 0;
+	}
+
+	/**
+	 * Decodes src[from..to) into dst, starting at index 0, and returns the
+	 * number of code points stored. dst must have room for to - from + 1
+	 * code points (a pending sequence from the previous chunk may turn into
+	 * an extra replacement character).
+	 */
+	public int decode( byte[] src, int from, int to, int[] dst ) {
+		int n = 0;
+		int i = from;
+		while ( i < to ) {
+			int b = src[i];
+			if ( remain == 0 ) {
+				if ( b >= 0 ) {
+					// ASCII: no decoding needed
+					dst[n++] = b;
+					while ( ++i < to && ( b = src[i] ) >= 0 ) {
+						dst[n++] = b;
+					}
+					continue;
+				}
+				b &= 255;
+				++i;
+				if ( b >= 0xc2 && b <= 0xdf ) {			// 2 byte cp
+					cp = b & 0x1f; remain = 1;
+					lower = 0x80; upper = 0xbf;
+				}
+				else if ( b >= 0xe0 && b <= 0xef ) {	// 3 byte cp
+					cp = b & 0x0f; remain = 2;
+					lower = b == 0xe0 ? 0xa0 : 0x80;	// no overlong forms
+					upper = b == 0xed ? 0x9f : 0xbf;	// no surrogates
+				}
+				else if ( b >= 0xf0 && b <= 0xf4 ) {	// 4 byte cp
+					cp = b & 0x07; remain = 3;
+					lower = b == 0xf0 ? 0x90 : 0x80;	// no overlong forms
+					upper = b == 0xf4 ? 0x8f : 0xbf;	// nothing above U+10FFFF
+				}
+				else {	// continuation byte, C0, C1 or F5..FF
+					dst[n++] = REPLACEMENT_CHAR;
+				}
+			}
+			else {
+				b &= 255;
+				if ( b < lower || b > upper ) {
+					// truncated sequence: replace it, then decode b afresh
+					remain = 0;
+					dst[n++] = REPLACEMENT_CHAR;
+					continue;
+				}
+				++i;
+				cp = ( cp << 6 ) | ( b & 0x3f );
+				lower = 0x80; upper = 0xbf;
+				if ( --remain == 0 ) {
+					dst[n++] = cp;
+				}
+			}
+		}
+		return n;
+	}
+
+}
@@ -0,0 +1,69 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe
+*/
+
+package jtermemu;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API implementation of ControlScanner.scan(). Only loaded when the
+ * jdk.incubator.vector module is present.
+ *
+ * The first few bytes are tested with the scalar loop, since setting up a
+ * vector compare does not pay off for the many short runs between escape
+ * sequences. Bytes are compared as signed values, so a single "less than 0x20" test
+ * catches C0 controls as well as every byte from 0x80 upward; DEL is tested
+ * separately.
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+class VectorControlScanner {
+
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+	/** Bytes tested one by one before switching to vectors; most runs are short. */
+	private static final int PROBE = 16;
+
+	static int scan( byte[] arr, int from, int to ) {
+		int probeEnd = Math.min( to, from + PROBE );
+		from = ControlScanner.scanScalar( arr, from, probeEnd );
+		if ( from < probeEnd || from == to ) {
+			return from;
+		}
+		int step  = SPECIES.length();
+		int bound = to - step;
+		while ( from <= bound ) {
+			ByteVector v = ByteVector.fromArray( SPECIES, arr, from );
+			VectorMask<Byte> m = v.compare( VectorOperators.LT, (byte) 0x20 )
+								  .or( v.compare( VectorOperators.EQ, (byte) 0x7f ) );
+			if ( m.anyTrue() ) {
+				return from + m.firstTrue();
+			}
+			from += step;
+		}
+		return ControlScanner.scanScalar( arr, from, to );
+	}
+
+}
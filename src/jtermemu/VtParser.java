@@ -0,0 +1,416 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe
+*/
+
+package jtermemu;
+
+/**
+ * Table-driven parser for the DEC VT500 / xterm control sequence grammar.
+ *
+ * The parser consumes code points. Every code point below 0xa0 has its own
+ * column in the transition table, everything from 0xa0 upward shares the
+ * last column (it is printable in the ground state and string payload in
+ * OSC / DCS strings).
+ *
+ * Each table entry is laid out as follows:
+ *
+ * 	<transition.1> <action.4> <nextState.4>
+ *
+ * If the transition bit is set, the exit action of the current state and
+ * the entry action of the next state are run around the transition action,
+ * even if both states are the same (e.g. ESC while already in ESCAPE).
+ *
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class VtParser {
+
+	// states
+	public static final int GROUND 				= 0;
+	public static final int ESCAPE 				= 1;
+	public static final int ESCAPE_INTERMEDIATE = 2;
+	public static final int CSI_ENTRY 			= 3;
+	public static final int CSI_PARAM 			= 4;
+	public static final int CSI_INTERMEDIATE 	= 5;
+	public static final int CSI_IGNORE 			= 6;
+	public static final int OSC_STRING 			= 7;
+	public static final int DCS_ENTRY 			= 8;
+	public static final int DCS_PARAM 			= 9;
+	public static final int DCS_INTERMEDIATE 	= 10;
+	public static final int DCS_PASSTHROUGH 	= 11;
+	public static final int DCS_IGNORE 			= 12;
+	public static final int SOS_PM_APC_STRING 	= 13;
+
+	private static final int NUM_STATES = 14;
+
+	// transition actions
+	private static final int ACT_NONE 			= 0;
+	private static final int ACT_IGNORE 		= 1;
+	private static final int ACT_PRINT 			= 2;
+	private static final int ACT_EXECUTE 		= 3;
+	private static final int ACT_COLLECT 		= 4;
+	private static final int ACT_PARAM 			= 5;
+	private static final int ACT_ESC_DISPATCH 	= 6;
+	private static final int ACT_CSI_DISPATCH 	= 7;
+	private static final int ACT_PUT 			= 8;
+	private static final int ACT_OSC_PUT 		= 9;
+
+	private static final int STATE_MASK   = 0x0f;
+	private static final int ACTION_SHIFT = 4;
+	private static final int ACTION_MASK  = 0x0f;
+	private static final int TRANSITION   = 0x100;
+
+	/** Maximum number of CSI parameters kept; further parameters are dropped. */
+	public static final int MAX_PARAMS = 32;
+
+	/** Largest value a single parameter can take; longer digit strings saturate. */
+	private static final int MAX_PARAM_VALUE = 65535;
+
+	/** Number of table columns: one per code point below 0xa0, plus one for the rest. */
+	private static final int NUM_CLASSES = 0xa1;
+
+	private static final short[] table = new short [ NUM_STATES * NUM_CLASSES ];
+
+	private TextScreen textScr;
+	private int state = GROUND;
+	private OscBuffer oscBuf;
+
+	/**
+	 * Sequence parameters, accumulated numerically as the digits arrive.
+	 * Empty parameters are 0. Bit n of subParams is set if parameter n was
+	 * separated from its predecessor by ':' instead of ';'.
+	 */
+	private int[] params;
+	private int nparams;
+	private int subParams;
+	private boolean paramOverflow;
+
+	/** Private marker ('<', '=', '>' or '?') or 0. */
+	private int marker;
+
+	/** Up to two intermediate bytes, first one in bits 8..15; -1 if there were more. */
+	private int intermediates;
+
+	static {
+		buildTable();
+	}
+
+	VtParser( TextScreen textScr_ ) {
+		textScr = textScr_;
+		oscBuf 	= new OscBuffer();
+		params 	= new int [MAX_PARAMS];
+	}
+
+	private static void stay( int state, int from, int to, int action ) {
+		for ( int c=from; c <= to; ++c ) {
+			table[ state * NUM_CLASSES + c ] = (short)( ( action << ACTION_SHIFT ) | state );
+		}
+	}
+
+	private static void move( int state, int from, int to, int action, int next ) {
+		for ( int c=from; c <= to; ++c ) {
+			table[ state * NUM_CLASSES + c ] = (short)( TRANSITION | ( action << ACTION_SHIFT ) | next );
+		}
+	}
+
+	/** C0 controls that are executed (or ignored) without leaving the state. */
+	private static void stayC0( int state, int action ) {
+		stay( state, 0x00, 0x17, action );
+		stay( state, 0x19, 0x19, action );
+		stay( state, 0x1c, 0x1f, action );
+	}
+
+	private static void buildTable() {
+		// GROUND
+		stayC0( GROUND, ACT_EXECUTE );
+		stay( GROUND, 0x20, 0x7f, ACT_PRINT );
+		stay( GROUND, 0xa0, 0xa0, ACT_PRINT );
+
+		// ESCAPE
+		stayC0( ESCAPE, ACT_EXECUTE );
+		stay( ESCAPE, 0x7f, 0x7f, ACT_IGNORE );
+		stay( ESCAPE, 0xa0, 0xa0, ACT_IGNORE );
+		move( ESCAPE, 0x20, 0x2f, ACT_COLLECT, ESCAPE_INTERMEDIATE );
+		move( ESCAPE, 0x30, 0x7e, ACT_ESC_DISPATCH, GROUND );
+		move( ESCAPE, 0x50, 0x50, ACT_NONE, DCS_ENTRY );
+		move( ESCAPE, 0x58, 0x58, ACT_NONE, SOS_PM_APC_STRING );
+		move( ESCAPE, 0x5b, 0x5b, ACT_NONE, CSI_ENTRY );
+		move( ESCAPE, 0x5d, 0x5d, ACT_NONE, OSC_STRING );
+		move( ESCAPE, 0x5e, 0x5f, ACT_NONE, SOS_PM_APC_STRING );
+
+		// ESCAPE_INTERMEDIATE
+		stayC0( ESCAPE_INTERMEDIATE, ACT_EXECUTE );
+		stay( ESCAPE_INTERMEDIATE, 0x20, 0x2f, ACT_COLLECT );
+		stay( ESCAPE_INTERMEDIATE, 0x7f, 0x7f, ACT_IGNORE );
+		stay( ESCAPE_INTERMEDIATE, 0xa0, 0xa0, ACT_IGNORE );
+		move( ESCAPE_INTERMEDIATE, 0x30, 0x7e, ACT_ESC_DISPATCH, GROUND );
+
+		// CSI_ENTRY
+		stayC0( CSI_ENTRY, ACT_EXECUTE );
+		stay( CSI_ENTRY, 0x7f, 0x7f, ACT_IGNORE );
+		stay( CSI_ENTRY, 0xa0, 0xa0, ACT_IGNORE );
+		move( CSI_ENTRY, 0x20, 0x2f, ACT_COLLECT, CSI_INTERMEDIATE );
+		move( CSI_ENTRY, 0x30, 0x3b, ACT_PARAM, CSI_PARAM );
+		move( CSI_ENTRY, 0x3c, 0x3f, ACT_COLLECT, CSI_PARAM );
+		move( CSI_ENTRY, 0x40, 0x7e, ACT_CSI_DISPATCH, GROUND );
+
+		// CSI_PARAM
+		stayC0( CSI_PARAM, ACT_EXECUTE );
+		stay( CSI_PARAM, 0x30, 0x3b, ACT_PARAM );
+		stay( CSI_PARAM, 0x7f, 0x7f, ACT_IGNORE );
+		stay( CSI_PARAM, 0xa0, 0xa0, ACT_IGNORE );
+		move( CSI_PARAM, 0x3c, 0x3f, ACT_NONE, CSI_IGNORE );
+		move( CSI_PARAM, 0x20, 0x2f, ACT_COLLECT, CSI_INTERMEDIATE );
+		move( CSI_PARAM, 0x40, 0x7e, ACT_CSI_DISPATCH, GROUND );
+
+		// CSI_INTERMEDIATE
+		stayC0( CSI_INTERMEDIATE, ACT_EXECUTE );
+		stay( CSI_INTERMEDIATE, 0x20, 0x2f, ACT_COLLECT );
+		stay( CSI_INTERMEDIATE, 0x7f, 0x7f, ACT_IGNORE );
+		stay( CSI_INTERMEDIATE, 0xa0, 0xa0, ACT_IGNORE );
+		move( CSI_INTERMEDIATE, 0x30, 0x3f, ACT_NONE, CSI_IGNORE );
+		move( CSI_INTERMEDIATE, 0x40, 0x7e, ACT_CSI_DISPATCH, GROUND );
+
+		// CSI_IGNORE
+		stayC0( CSI_IGNORE, ACT_EXECUTE );
+		stay( CSI_IGNORE, 0x20, 0x3f, ACT_IGNORE );
+		stay( CSI_IGNORE, 0x7f, 0x7f, ACT_IGNORE );
+		stay( CSI_IGNORE, 0xa0, 0xa0, ACT_IGNORE );
+		move( CSI_IGNORE, 0x40, 0x7e, ACT_NONE, GROUND );
+
+		// OSC_STRING (terminated by BEL as in xterm, or by ST)
+		stayC0( OSC_STRING, ACT_IGNORE );
+		stay( OSC_STRING, 0x20, 0x7f, ACT_OSC_PUT );
+		stay( OSC_STRING, 0xa0, 0xa0, ACT_OSC_PUT );
+		move( OSC_STRING, 0x07, 0x07, ACT_NONE, GROUND );
+
+		// DCS_ENTRY
+		stayC0( DCS_ENTRY, ACT_IGNORE );
+		stay( DCS_ENTRY, 0x7f, 0x7f, ACT_IGNORE );
+		stay( DCS_ENTRY, 0xa0, 0xa0, ACT_IGNORE );
+		move( DCS_ENTRY, 0x20, 0x2f, ACT_COLLECT, DCS_INTERMEDIATE );
+		move( DCS_ENTRY, 0x30, 0x39, ACT_PARAM, DCS_PARAM );
+		move( DCS_ENTRY, 0x3a, 0x3a, ACT_NONE, DCS_IGNORE );
+		move( DCS_ENTRY, 0x3b, 0x3b, ACT_PARAM, DCS_PARAM );
+		move( DCS_ENTRY, 0x3c, 0x3f, ACT_COLLECT, DCS_PARAM );
+		move( DCS_ENTRY, 0x40, 0x7e, ACT_NONE, DCS_PASSTHROUGH );
+
+		// DCS_PARAM
+		stayC0( DCS_PARAM, ACT_IGNORE );
+		stay( DCS_PARAM, 0x30, 0x39, ACT_PARAM );
+		stay( DCS_PARAM, 0x3b, 0x3b, ACT_PARAM );
+		stay( DCS_PARAM, 0x7f, 0x7f, ACT_IGNORE );
+		stay( DCS_PARAM, 0xa0, 0xa0, ACT_IGNORE );
+		move( DCS_PARAM, 0x3a, 0x3a, ACT_NONE, DCS_IGNORE );
+		move( DCS_PARAM, 0x3c, 0x3f, ACT_NONE, DCS_IGNORE );
+		move( DCS_PARAM, 0x20, 0x2f, ACT_COLLECT, DCS_INTERMEDIATE );
+		move( DCS_PARAM, 0x40, 0x7e, ACT_NONE, DCS_PASSTHROUGH );
+
+		// DCS_INTERMEDIATE
+		stayC0( DCS_INTERMEDIATE, ACT_IGNORE );
+		stay( DCS_INTERMEDIATE, 0x20, 0x2f, ACT_COLLECT );
+		stay( DCS_INTERMEDIATE, 0x7f, 0x7f, ACT_IGNORE );
+		stay( DCS_INTERMEDIATE, 0xa0, 0xa0, ACT_IGNORE );
+		move( DCS_INTERMEDIATE, 0x30, 0x3f, ACT_NONE, DCS_IGNORE );
+		move( DCS_INTERMEDIATE, 0x40, 0x7e, ACT_NONE, DCS_PASSTHROUGH );
+
+		// DCS_PASSTHROUGH
+		stayC0( DCS_PASSTHROUGH, ACT_PUT );
+		stay( DCS_PASSTHROUGH, 0x20, 0x7e, ACT_PUT );
+		stay( DCS_PASSTHROUGH, 0x7f, 0x7f, ACT_IGNORE );
+		stay( DCS_PASSTHROUGH, 0xa0, 0xa0, ACT_PUT );
+
+		// DCS_IGNORE
+		stayC0( DCS_IGNORE, ACT_IGNORE );
+		stay( DCS_IGNORE, 0x20, 0x7f, ACT_IGNORE );
+		stay( DCS_IGNORE, 0xa0, 0xa0, ACT_IGNORE );
+
+		// SOS_PM_APC_STRING
+		stayC0( SOS_PM_APC_STRING, ACT_IGNORE );
+		stay( SOS_PM_APC_STRING, 0x20, 0x7f, ACT_IGNORE );
+		stay( SOS_PM_APC_STRING, 0xa0, 0xa0, ACT_IGNORE );
+
+		// transitions that apply in every state
+		for ( int s=0; s < NUM_STATES; ++s ) {
+			move( s, 0x18, 0x18, ACT_EXECUTE, GROUND );	// CAN
+			move( s, 0x1a, 0x1a, ACT_EXECUTE, GROUND );	// SUB
+			move( s, 0x1b, 0x1b, ACT_NONE, ESCAPE );
+			move( s, 0x80, 0x8f, ACT_EXECUTE, GROUND );
+			move( s, 0x90, 0x90, ACT_NONE, DCS_ENTRY );
+			move( s, 0x91, 0x97, ACT_EXECUTE, GROUND );
+			move( s, 0x98, 0x98, ACT_NONE, SOS_PM_APC_STRING );
+			move( s, 0x99, 0x9a, ACT_EXECUTE, GROUND );
+			move( s, 0x9b, 0x9b, ACT_NONE, CSI_ENTRY );
+			move( s, 0x9c, 0x9c, ACT_NONE, GROUND );	// ST
+			move( s, 0x9d, 0x9d, ACT_NONE, OSC_STRING );
+			move( s, 0x9e, 0x9f, ACT_NONE, SOS_PM_APC_STRING );
+		}
+	}
+
+	private void exitState( int s ) {
+		if ( s == OSC_STRING ) {
+			textScr.handleOsc( oscBuf );
+		}
+		// DCS_PASSTHROUGH: no device control strings are supported yet,
+		// so there is nothing to unhook.
+	}
+
+	private void enterState( int s ) {
+		switch ( s ) {
+		case ESCAPE:
+		case CSI_ENTRY:
+		case DCS_ENTRY:
+			nparams 	  = 0;
+			subParams 	  = 0;
+			paramOverflow = false;
+			marker 		  = 0;
+			intermediates = 0;
+			break;
+		case OSC_STRING:
+			oscBuf.clear();
+			break;
+		}
+	}
+
+	private void action( int action, int c ) {
+		switch ( action ) {
+		case ACT_PRINT:
+			textScr.print( c );
+			break;
+		case ACT_EXECUTE:
+			textScr.execute( c );
+			break;
+		case ACT_COLLECT:
+			collect( c );
+			break;
+		case ACT_PARAM:
+			param( c );
+			break;
+		case ACT_ESC_DISPATCH:
+			if ( intermediates >= 0 ) {
+				textScr.handleEsc( intermediates, c );
+			}
+			break;
+		case ACT_CSI_DISPATCH:
+			if ( intermediates >= 0 ) {
+				textScr.handleCsi( c, marker, intermediates, params, nparams, subParams );
+			}
+			break;
+		case ACT_OSC_PUT:
+			oscBuf.append( c );
+			break;
+		case ACT_PUT:
+		case ACT_IGNORE:
+		case ACT_NONE:
+			break;
+		}
+	}
+
+	private void collect( int c ) {
+		if ( c >= 0x3c && c <= 0x3f ) {
+			marker = c;
+		}
+		else if ( intermediates >= 0 ) {
+			intermediates = intermediates <= 0xff ? ( intermediates << 8 ) | c : -1;
+		}
+	}
+
+	private void param( int c ) {
+		if ( nparams == 0 ) {
+			params[0] = 0;
+			nparams = 1;
+		}
+		if ( c >= '0' && c <= '9' ) {
+			if ( !paramOverflow ) {
+				int v = params[ nparams-1 ] * 10 + ( c - '0' );
+				params[ nparams-1 ] = v < MAX_PARAM_VALUE ? v : MAX_PARAM_VALUE;
+			}
+		}
+		else if ( nparams < MAX_PARAMS ) {	// ';' or ':'
+			if ( c == ':' ) {
+				subParams |= 1 << nparams;
+			}
+			params[ nparams++ ] = 0;
+		}
+		else {
+			paramOverflow = true;
+		}
+	}
+
+	/**
+	 * Feeds one code point into the parser.
+	 */
+	public void advance( int c ) {
+		int entry = table[ state * NUM_CLASSES + ( c < NUM_CLASSES - 1 ? c : NUM_CLASSES - 1 ) ];
+		int action = ( entry >> ACTION_SHIFT ) & ACTION_MASK;
+		if ( ( entry & TRANSITION ) != 0 ) {
+			int next = entry & STATE_MASK;
+			exitState( state );
+			action( action, c );
+			state = next;
+			enterState( next );
+		}
+		else {
+			action( action, c );
+		}
+	}
+
+	/**
+	 * Feeds cps[from..to) into the parser. Runs of printable code points in
+	 * the ground state are handed to the screen in one piece, runs of OSC
+	 * payload are appended to the OSC buffer in one piece.
+	 */
+	public void advance( int[] cps, int from, int to ) {
+		while ( from < to ) {
+			if ( state == GROUND || state == OSC_STRING ) {
+				int i = from;
+				while ( i < to && isPrintable( cps[i] ) ) ++i;
+				if ( i > from ) {
+					if ( state == GROUND ) {
+						textScr.printRun( cps, from, i );
+					}
+					else {
+						oscBuf.append( cps, from, i );
+					}
+					from = i;
+					continue;
+				}
+			}
+			advance( cps[ from++ ] );
+		}
+	}
+
+	public OscBuffer getOscBuffer() {
+		return oscBuf;
+	}
+
+	private static boolean isPrintable( int c ) {
+		return ( c >= 0x20 && c < 0x80 ) || c >= 0xa0;
+	}
+
+	public int getState() {
+		return state;
+	}
+
+	public boolean isInGround() {
+		return state == GROUND;
+	}
+
+}
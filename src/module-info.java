@@ -21,4 +21,5 @@
 
 module JTermEmu {
 	requires java.desktop;
+	requires static jdk.incubator.vector;
 }
\ No newline at end of file
@@ -0,0 +1,158 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+
+package jtermemu;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares Scrollback.search(), and with it the TrigramIndex of each
+ * sealed block, with a brute-force scan of the lines pushed. The lines use
+ * a small alphabet, so that most trigrams occur in many lines and the
+ * bucket lists overlap a lot; a few letters are not ASCII, which case
+ * folding must leave alone, and one is outside Latin-1. The history holds fewer lines than are
+ * pushed, so blocks are sealed, indexed and evicted while searching.
+ * 
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class ScrollbackSearchTest {
+
+	private static final int WIDTH 	= 60;
+	private static final int LINES 	= 20000;
+	private static final char[] CHARS = { 'a', 'b', 'c', 'A', 'B', 'C', ' ', ':', 0xe9, 0xc9, 0x4e2d };
+
+	private final Random rnd = new Random( 1 );
+	private Scrollback scrollback;
+	private ArrayList<String> pushed;
+
+	@BeforeEach
+	public void setUp() {
+		scrollback = new Scrollback( new StyleTable( 1, 0 ), WIDTH, LINES * 3 / 5, Long.MAX_VALUE );
+		pushed 	   = new ArrayList<>();
+	}
+
+	@Test
+	public void findsTheNewestMatchingLines() {
+		for ( int n=0; n < LINES; ++n ) {
+			push( randomText( rnd.nextInt( WIDTH + 1 ) ) );
+			if ( n % 100 == 99 ) {
+				for ( int i=0; i < 15; ++i ) {
+					String query = rnd.nextInt( 4 ) == 0 ? randomText( 1 + rnd.nextInt( 6 ) ) : pieceOfALine();
+					boolean ignoreCase = rnd.nextBoolean();
+					int maxResults = rnd.nextInt( 3 ) == 0 ? 1 + rnd.nextInt( 20 ) : Integer.MAX_VALUE;
+					assertArrayEquals( bruteForce( query, ignoreCase, maxResults ), scrollback.search( query, ignoreCase, maxResults ),
+							"query \"" + query + "\"" + ( ignoreCase ? " ignoring case" : "" ) + ", at most " + maxResults );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void findsCharactersBeyondLatin1() {
+		push( "a\u4e2d\ud83d\ude00b" );
+		push( "a\u4e2e" );
+		assertArrayEquals( new long[] { 0 }, scrollback.search( "\u4e2d\ud83d\ude00", false, 10 ) );
+		assertArrayEquals( new long[] { 1, 0 }, scrollback.search( "A", true, 10 ) );
+	}
+
+	@Test
+	public void rejectsBadArguments() {
+		push( "abc" );
+		assertThrows( IllegalArgumentException.class, () -> scrollback.search( null, false, 10 ) );
+		assertThrows( IllegalArgumentException.class, () -> scrollback.search( "abc", false, -1 ) );
+		assertArrayEquals( new long[0], scrollback.search( "abc", false, 0 ) );
+	}
+
+	@Test
+	public void numbersLinesByAge() {
+		for ( int n=0; n < LINES; ++n ) {
+			push( "line " + n );
+		}
+		int held = scrollback.size();
+		long[] found = scrollback.search( "line ", false, 5 );
+		assertArrayEquals( new long[] { LINES - 1, LINES - 2, LINES - 3, LINES - 4, LINES - 5 }, found );
+		assertEquals( 0, scrollback.ageOf( LINES - 1 ) );
+		assertEquals( held - 1, scrollback.ageOf( LINES - held ) );
+		assertEquals( -1, scrollback.ageOf( LINES - held - 1 ) );
+		assertEquals( -1, scrollback.ageOf( LINES ) );
+	}
+
+	private void push( String text ) {
+		int[] chars  = new int [ WIDTH ];
+		char[] styles = new char [ WIDTH ];	// all style 0
+		int[] cps = text.codePoints().toArray();
+		for ( int x=0; x < WIDTH; ++x ) {
+			chars[x] = x < cps.length ? cps[x] : ' ';
+		}
+		scrollback.push( chars, styles, 0 );
+		// the scrollback drops the trailing blanks of a line, which all have the same style here
+		pushed.add( text.stripTrailing() );
+	}
+
+	private String randomText( int len ) {
+		char[] text = new char [ len ];
+		for ( int i=0; i < len; ++i ) {
+			text[i] = CHARS[ rnd.nextInt( CHARS.length ) ];
+		}
+		return new String( text );
+	}
+
+	private String pieceOfALine() {
+		String line;
+		do {
+			line = pushed.get( pushed.size() - 1 - rnd.nextInt( scrollback.size() ) );
+		} while ( line.isEmpty() );
+		int from = rnd.nextInt( line.length() );
+		return line.substring( from, Math.min( line.length(), from + 1 + rnd.nextInt( 8 ) ) );
+	}
+
+	private long[] bruteForce( String query, boolean ignoreCase, int maxResults ) {
+		String q = ignoreCase ? foldAscii( query ) : query;
+		long[] results = new long [ scrollback.size() ];
+		int n = 0;
+		for ( int line=pushed.size()-1; line >= pushed.size() - scrollback.size() && n < maxResults; --line ) {
+			if ( ( ignoreCase ? foldAscii( pushed.get( line ) ) : pushed.get( line ) ).contains( q ) ) {
+				results[ n++ ] = line;
+			}
+		}
+		return Arrays.copyOf( results, n );
+	}
+
+	private static String foldAscii( String s ) {
+		char[] c = s.toCharArray();
+		for ( int i=0; i < c.length; ++i ) {
+			if ( c[i] >= 'A' && c[i] <= 'Z' ) c[i] += 32;
+		}
+		return new String( c );
+	}
+
+}
@@ -0,0 +1,186 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+
+package jtermemu;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares Scrollback with a list of the lines pushed: every line it still
+ * holds must decode to the same characters and styles. The lines are
+ * random mixes of ASCII, 2, 3 and 4 byte UTF-8 characters, style runs
+ * (some with hyperlinks) and trailing blanks, which are trimmed unless
+ * their style differs from the last cell's; small budgets make blocks get
+ * sealed and evicted all the time. The StyleTable is swept now and then,
+ * so the lines have to intern their styles again; styles are therefore
+ * compared by their contents, not by their ids.
+ * 
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class ScrollbackTest {
+
+	private static final int WIDTH 	= 40;
+	private static final int PUSHES = 20000;
+
+	// fg, bg, attr, underline color, link number (into LINKS, 0 = none)
+	private static final int[][] STYLES = {
+		{ 1, 0, 0, StyleTable.NO_COLOR, 0 },
+		{ 2, 0, Attributes.ATTRF_BRIGHT, StyleTable.NO_COLOR, 0 },
+		{ StyleTable.COLOR_XTERM | 208, 1, 0, StyleTable.NO_COLOR, 0 },
+		{ StyleTable.COLOR_RGB | 0x123456, 0, Attributes.ATTRF_UNDERLINE, 3, 0 },
+		{ 5, 7, Attributes.ATTRF_INVERSE, StyleTable.NO_COLOR, 1 },
+		{ 1, 0, Attributes.ATTRF_UNDERLINE, StyleTable.NO_COLOR, 2 },
+	};
+	private static final String[] LINKS = { null, "https://example.com/a", "file:///tmp/b" };
+	// 1, 2, 3 and 4 byte UTF-8 sequences
+	private static final int[] CHARS = { 'a', 'Z', '0', '-', ' ', 0xe9, 0x3b1, 0x800, 0x4e2d, 0xffe8, 0x1f600 };
+
+	private final Random rnd = new Random( 1 );
+	private final StyleTable table = new StyleTable( 1, 0 );
+	private final int[] ids = new int [ STYLES.length ];
+
+	@Test
+	public void keepsLinesWithinTheLineBudget() {
+		check( new Scrollback( table, WIDTH, 1000, Long.MAX_VALUE ), 0 );
+	}
+
+	@Test
+	public void keepsLinesWithinTheByteBudget() {
+		check( new Scrollback( table, WIDTH, 100000, 20000 ), 0 );
+	}
+
+	@Test
+	public void keepsAFewLines() {
+		check( new Scrollback( table, WIDTH, 5, Long.MAX_VALUE ), 0 );
+	}
+
+	@Test
+	public void keepsNoLinesWithoutABudget() {
+		Scrollback scrollback = new Scrollback( table, WIDTH, 0, Long.MAX_VALUE );
+		int[] chars   = new int [ WIDTH ];
+		char[] styles = new char [ WIDTH ];
+		internStyles();
+		randomLine( chars, styles, new int [ WIDTH ] );
+		scrollback.push( chars, styles, 0 );
+		assertEquals( 0, scrollback.size() );
+	}
+
+	@Test
+	public void startsOverAfterClear() {
+		Scrollback scrollback = new Scrollback( table, WIDTH, 1000, Long.MAX_VALUE );
+		int[] chars   = new int [ WIDTH ];
+		char[] styles = new char [ WIDTH ];
+		internStyles();
+		for ( int i=0; i < 3000; ++i ) {
+			randomLine( chars, styles, new int [ WIDTH ] );
+			scrollback.push( chars, styles, 0 );
+		}
+		scrollback.clear();
+		assertEquals( 0, scrollback.size() );
+		assertEquals( 0, scrollback.getEncodedBytes() );
+		check( scrollback, 3000 );	// line numbers go on counting
+	}
+
+	private void internStyles() {
+		for ( int i=0; i < STYLES.length; ++i ) {
+			int[] s = STYLES[i];
+			ids[i] = table.intern( s[0], s[1], s[2], s[3], table.internLink( LINKS[ s[4] ] ) );
+		}
+	}
+
+	/**
+	 * Pushes random lines into scrollback, whose first line will get line
+	 * number first, and compares what it holds with them.
+	 */
+	private void check( Scrollback scrollback, long first ) {
+		ArrayList<int[]> pushedChars  = new ArrayList<>();
+		ArrayList<int[]> pushedStyles = new ArrayList<>();	// index into STYLES per cell
+		int[] chars   = new int [ WIDTH ];
+		char[] styles = new char [ WIDTH ];
+		int[] kinds   = new int [ WIDTH ];
+		internStyles();
+		for ( int n=0; n < PUSHES; ++n ) {
+			if ( rnd.nextInt( 5000 ) == 0 ) {
+				// free every style, then hand out the ids again in another order
+				table.beginSweep();
+				table.endSweep();
+				table.intern( 9, 9, 0, StyleTable.NO_COLOR, 0 );
+				internStyles();
+			}
+			randomLine( chars, styles, kinds );
+			scrollback.push( chars, styles, 0 );
+			pushedChars.add( chars.clone() );
+			pushedStyles.add( kinds.clone() );
+			int size = scrollback.size();
+			assertTrue( size > 0 && size <= n + 1, "lines held" );
+			// all held lines now and then, else the newest
+			int ages = n % 97 == 0 ? size : 1;
+			for ( int age=0; age < ages; ++age ) {
+				int line = n - age;
+				scrollback.getLine( age, chars, styles, 0 );
+				assertArrayEquals( pushedChars.get( line ), chars, "characters of line " + line );
+				int[] expected = pushedStyles.get( line );
+				for ( int x=0; x < WIDTH; ++x ) {
+					assertStyle( STYLES[ expected[x] ], styles[x], "style of line " + line + " column " + x );
+				}
+				assertEquals( age, scrollback.ageOf( first + line ) );
+			}
+			assertEquals( -1, scrollback.ageOf( first + n - size ) );
+		}
+	}
+
+	private void randomLine( int[] chars, char[] styles, int[] kinds ) {
+		int len  = rnd.nextInt( 4 ) == 0 ? WIDTH : rnd.nextInt( WIDTH + 1 );
+		int kind = rnd.nextInt( STYLES.length );
+		boolean ascii = rnd.nextBoolean();
+		for ( int x=0; x < len; ++x ) {
+			if ( rnd.nextInt( 8 ) == 0 ) kind = rnd.nextInt( STYLES.length );
+			chars[x] = ascii ? 0x20 + rnd.nextInt( 0x5f ) : CHARS[ rnd.nextInt( CHARS.length ) ];
+			kinds[x] = kind;
+		}
+		int fill = rnd.nextInt( STYLES.length );
+		for ( int x=len; x < WIDTH; ++x ) {
+			// now and then a blank that keeps the blanks after it from being trimmed
+			chars[x] = 0x20;
+			kinds[x] = x == WIDTH - 1 || rnd.nextInt( 10 ) != 0 ? fill : rnd.nextInt( STYLES.length );
+		}
+		for ( int x=0; x < WIDTH; ++x ) {
+			styles[x] = (char) ids[ kinds[x] ];
+		}
+	}
+
+	private void assertStyle( int[] expected, int id, String what ) {
+		int[] actual = { table.getForeground( id ), table.getBackground( id ), table.getAttributes( id ), table.getUnderlineColor( id ) };
+		assertArrayEquals( Arrays.copyOf( expected, 4 ), actual, what );
+		assertEquals( LINKS[ expected[4] ], table.getLinkURI( table.getLink( id ) ), what );
+	}
+
+}
@@ -0,0 +1,86 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+
+package jtermemu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks how StyleTable hands out, keeps and frees hyperlink ids.
+ * 
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class StyleTableTest {
+
+	private StyleTable table = new StyleTable( 1, 0 );
+
+	@Test
+	public void releasesLinksNoStyleUses() {
+		int a = table.internLink( "a" );
+		table.releaseLink( a );
+		assertNull( table.getLinkURI( a ) );
+		assertEquals( a, table.internLink( "b" ) );
+	}
+
+	@Test
+	public void keepsLinksAStyleUses() {
+		int a = table.internLink( "a" );
+		int style = table.intern( 2, 0, 0, StyleTable.NO_COLOR, a );
+		table.releaseLink( a );
+		assertEquals( "a", table.getLinkURI( table.getLink( style ) ) );
+		assertEquals( a, table.internLink( "a" ) );
+	}
+
+	@Test
+	public void sweepsLinksWithTheirLastStyle() {
+		int a = table.internLink( "a" );
+		int b = table.internLink( "b" );
+		table.intern( 2, 0, 0, StyleTable.NO_COLOR, a );
+		int styleB = table.intern( 3, 0, 0, StyleTable.NO_COLOR, b );
+		table.intern( 4, 0, 0, StyleTable.NO_COLOR, b );
+		table.beginSweep();
+		table.mark( styleB );
+		table.endSweep();
+		assertNull( table.getLinkURI( a ) );
+		assertEquals( "b", table.getLinkURI( table.getLink( styleB ) ) );
+		assertEquals( a, table.internLink( "c" ) );
+		table.beginSweep();
+		table.endSweep();
+		assertNull( table.getLinkURI( b ) );
+	}
+
+	@Test
+	public void reusesLinkIdsForAStreamOfLinks() {
+		int first = table.internLink( "https://example.com/0" );
+		for ( int i=1; i < 100000; ++i ) {
+			int id = table.internLink( "https://example.com/" + i );
+			table.releaseLink( first );
+			first = id;
+		}
+		assertEquals( 2, Math.max( first, table.internLink( "x" ) ) );
+	}
+
+}
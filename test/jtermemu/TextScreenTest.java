@@ -0,0 +1,96 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+
+package jtermemu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Feeds escape sequences to a TextScreen and checks the cells it holds
+ * afterwards, as the renderer sees them in a snapshot.
+ * 
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class TextScreenTest {
+
+	private TextScreen textScr;
+	private int[] chars;
+	private char[] styles;
+	private StyleTable table = new StyleTable();
+	private PrintStream stdout;
+
+	@BeforeEach
+	public void setUp() {
+		stdout = System.out;
+		System.setOut( new PrintStream( OutputStream.nullOutputStream() ) );	// diagnostics
+		textScr = new TextScreen( null );
+		chars 	= new int [ textScr.getColumns() * textScr.getRows() ];
+		styles 	= new char [ chars.length ];
+	}
+
+	@AfterEach
+	public void tearDown() {
+		System.setOut( stdout );
+	}
+
+	private void write( String s ) {
+		byte[] b = s.getBytes( StandardCharsets.UTF_8 );
+		textScr.write( b, 0, b.length );
+	}
+
+	private String linkAt( int x, int y ) {
+		textScr.snapshot( chars, styles, table );
+		return table.getLinkURI( table.getLink( styles[ y * textScr.getColumns() + x ] ) );
+	}
+
+	@Test
+	public void keepsTheHyperlinkOfTheCurrentPenAcrossStyleSweeps() {
+		// every cell printed gets a new style, so the style table is swept
+		// again and again, each time while the pen has a link no cell uses yet
+		for ( int i=0; i < 5000; ++i ) {
+			write( "\033[H\033]8;;https://example.com/" + i + "\007\033[38;2;" + ( i & 255 ) + ";" + ( i >> 8 ) + ";1mx" );
+			assertEquals( "https://example.com/" + i, linkAt( 0, 0 ), "link of cell " + i );
+		}
+	}
+
+	@Test
+	public void doesNotPileUpLinksThatNoCellUses() {
+		for ( int i=0; i < 100000; ++i ) {
+			write( "\033]8;;https://example.com/" + i + "\007" );
+		}
+		write( "x\033]8;;\007" );
+		assertEquals( "https://example.com/99999", linkAt( 0, 0 ) );
+		// the storm took turns between ids 1 and 2
+		assertTrue( textScr.getStyleTable().internLink( "https://example.com/other" ) <= 2 );
+	}
+
+}
@@ -0,0 +1,147 @@
+/*  JTermEmu - a terminal emulator written in Java
+    Copyright (C) 2023  Ekkehard Morgenstern
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+    CONTACT INFO:
+        E-Mail: ekkehard@ekkehardmorgenstern.de
+        Mail: Ekkehard Morgenstern, Mozartstr. 1, D-76744 Woerth am Rhein, Germany, Europe 
+*/
+
+
+package jtermemu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Compares TileCache with a HashMap: random lookups and inserts over a key
+ * space a few times larger than the cache, so that tiles are evicted all
+ * the time and remove() has to shift back the entries of long probe runs,
+ * including runs that wrap around the end of the table. After every
+ * eviction, all tiles the model holds must still be found.
+ * 
+ * @author Ekkehard Morgenstern
+ *
+ */
+public class TileCacheTest {
+
+	private static final int OPS = 50000;
+
+	@ParameterizedTest
+	@ValueSource( ints = { 1, 2, 3, 7, 64, 100, 2048 } )
+	public void findsWhatTheModelHolds( int capacity ) {
+		Random rnd = new Random( capacity );
+		TileCache cache = new TileCache( capacity, 1 );
+		HashMap<Integer,Integer> model = new HashMap<>();	// key -> tile
+		int[] keyOf = new int [ capacity ];					// tile -> key, or -1
+		Arrays.fill( keyOf, -1 );
+		int keys = capacity * 3 + 5;
+		for ( int i=0; i < OPS; ++i ) {
+			int k = rnd.nextInt( keys );
+			int t = find( cache, k );
+			assertEquals( model.getOrDefault( k, -1 ), t, "tile of key " + k );
+			if ( t < 0 ) {
+				t = cache.add( k, fg( k ), bg( k ), ul( k ) );
+				boolean evicted = keyOf[t] >= 0;
+				if ( evicted ) {
+					model.remove( keyOf[t] );
+				}
+				keyOf[t] = k;
+				model.put( k, t );
+				cache.getTile( t )[0] = k;
+				if ( evicted ) {
+					for ( Map.Entry<Integer,Integer> e : model.entrySet() ) {
+						assertEquals( e.getValue(), find( cache, e.getKey() ), "tile of key " + e.getKey() + " after evicting tile " + t );
+					}
+				}
+			}
+			assertEquals( k, cache.getTile( t )[0], "contents of tile " + t );
+		}
+		assertEquals( model.size(), cache.size() );
+	}
+
+	@Test
+	public void evictsTilesThatWereNotUsedRecently() {
+		TileCache cache = new TileCache( 4, 1 );
+		for ( int k=0; k < 4; ++k ) {
+			cache.add( k, fg( k ), bg( k ), ul( k ) );
+		}
+		find( cache, 0 );
+		find( cache, 2 );
+		cache.add( 4, fg( 4 ), bg( 4 ), ul( 4 ) );
+		assertNotEquals( -1, find( cache, 0 ) );
+		assertNotEquals( -1, find( cache, 2 ) );
+		assertEquals( -1, find( cache, 1 ) );
+		assertEquals( 1, cache.getEvictions() );
+	}
+
+	@Test
+	public void forgetsAllTilesOnClear() {
+		TileCache cache = new TileCache( 8, 1 );
+		for ( int k=0; k < 20; ++k ) {
+			cache.add( k, fg( k ), bg( k ), ul( k ) );
+		}
+		cache.clear();
+		assertEquals( 0, cache.size() );
+		for ( int k=0; k < 20; ++k ) {
+			assertEquals( -1, find( cache, k ) );
+		}
+		// and fills up from the start again
+		assertEquals( 0, cache.add( 5, fg( 5 ), bg( 5 ), ul( 5 ) ) );
+		assertEquals( 0, find( cache, 5 ) );
+	}
+
+	@Test
+	public void countsHitsAndMisses() {
+		TileCache cache = new TileCache( 16, 1 );
+		find( cache, 1 );
+		cache.add( 1, fg( 1 ), bg( 1 ), ul( 1 ) );
+		find( cache, 1 );
+		find( cache, 1 );
+		find( cache, 2 );
+		assertEquals( 2, cache.getHits() );
+		assertEquals( 2, cache.getMisses() );
+		assertEquals( 0.5, cache.getHitRate() );
+		cache.resetStatistics();
+		assertEquals( 0.0, cache.getHitRate() );
+	}
+
+	private static int find( TileCache cache, int k ) {
+		return cache.find( k, fg( k ), bg( k ), ul( k ) );
+	}
+
+	// few distinct colors, as on a real screen
+	private static int fg( int k ) {
+		return k % 5;
+	}
+
+	private static int bg( int k ) {
+		return k % 3;
+	}
+
+	private static int ul( int k ) {
+		return ( k & 8 ) != 0 ? k % 5 : 0;
+	}
+
+}